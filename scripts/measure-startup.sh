@@ -0,0 +1,41 @@
+#!/usr/bin/env bash
+# Compares the wall-clock time of a training run with and without the class-data-sharing archive.
+#
+# Usage: scripts/measure-startup.sh [RUNS]
+# Expects build/libs/starling.jar and build/libs/starling.jsa, see `./gradlew appCdsArchive`.
+
+set -euo pipefail
+
+RUNS="${1:-20}"
+DIR="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="${STARLING_JAR:-$DIR/build/libs/starling.jar}"
+ARCHIVE="${STARLING_CDS_ARCHIVE:-$DIR/build/libs/starling.jsa}"
+
+measure() {
+    local label="$1"
+    shift
+    local total=0 min=0 max=0
+
+    # One untimed run to warm up the file system cache.
+    java "$@" -jar "$JAR" --training-run > /dev/null
+
+    for ((i = 0; i < RUNS; i++)); do
+        local start end elapsed
+        start=$(date +%s%N)
+        java "$@" -jar "$JAR" --training-run > /dev/null
+        end=$(date +%s%N)
+        elapsed=$(((end - start) / 1000000))
+        total=$((total + elapsed))
+        if ((i == 0 || elapsed < min)); then min=$elapsed; fi
+        if ((elapsed > max)); then max=$elapsed; fi
+    done
+
+    printf '%-28s mean %5d ms   min %5d ms   max %5d ms\n' "$label" $((total / RUNS)) "$min" "$max"
+}
+
+java -version 2>&1 | head -n 1
+echo "$RUNS runs each, $(nproc) CPU(s)"
+measure "default"
+measure "trimmed, no archive" -XX:TieredStopAtLevel=1 -XX:+UseSerialGC
+measure "archive" -XX:SharedArchiveFile="$ARCHIVE"
+measure "archive + trimmed" -XX:SharedArchiveFile="$ARCHIVE" -XX:TieredStopAtLevel=1 -XX:+UseSerialGC
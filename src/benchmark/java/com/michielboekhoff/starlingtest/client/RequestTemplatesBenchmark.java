@@ -0,0 +1,152 @@
+package com.michielboekhoff.starlingtest.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michielboekhoff.starlingtest.config.Configuration;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Compares building feed and transfer requests with {@link RequestTemplates} against building them the way
+ * {@link ApiClient} used to: formatting the path, parsing and resolving the base URL, concatenating the authorization
+ * header and serialising the transfer body through the object mapper, all for every request.
+ * <p>
+ * Run with {@code ./gradlew benchmark}. Every round builds {@value #OPERATIONS} requests; the best round is reported so
+ * that garbage collection and JIT compilation in other rounds do not skew the result. Allocation is reported per
+ * request as well, as at tens of thousands of requests a minute it turns into collector work.
+ */
+public class RequestTemplatesBenchmark {
+
+    private static final int OPERATIONS = 200_000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 10;
+
+    private static final String ACCESS_TOKEN = "token";
+    private static final String ACCOUNT_UID = UUID.randomUUID().toString();
+    private static final String CATEGORY_UID = UUID.randomUUID().toString();
+    private static final String SAVINGS_GOAL_UID = UUID.randomUUID().toString();
+    private static final String TRANSFER_UID = UUID.randomUUID().toString();
+
+    private final Configuration configuration = Configuration.defaults();
+    private final ObjectMapper objectMapper = configuration.getObjectMapper();
+    private final Interval interval = Interval.lastWeek(Clock.systemUTC());
+    private final RequestTemplates requestTemplates = new RequestTemplates(configuration, ACCESS_TOKEN);
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private int sink;
+
+    public static void main(String[] args) throws JsonProcessingException {
+        RequestTemplatesBenchmark benchmark = new RequestTemplatesBenchmark();
+
+        System.out.printf("%-10s %23s %23s%n", "request", "formatted", "templated");
+        report("feed", benchmark.measure(benchmark::formattedFeed), benchmark.measure(benchmark::templatedFeed));
+        report("transfer", benchmark.measure(benchmark::formattedTransfer), benchmark.measure(benchmark::templatedTransfer));
+
+        // Printed so that the JIT cannot prove the requests unused.
+        System.out.println("(" + benchmark.sink + ")");
+    }
+
+    private static void report(String request, Result formatted, Result templated) {
+        System.out.printf("%-10s %7.0f ns %7.0f B/op %7.0f ns %7.0f B/op  (%.2fx time, %.2fx allocation)%n",
+                request,
+                formatted.nanos, formatted.bytes,
+                templated.nanos, templated.bytes,
+                formatted.nanos / templated.nanos, formatted.bytes / templated.bytes);
+    }
+
+    private Result measure(Operation operation) throws JsonProcessingException {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(operation);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long best = Long.MAX_VALUE;
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(operation));
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        return new Result((double) best / OPERATIONS, (double) allocated / ((long) ROUNDS * OPERATIONS));
+    }
+
+    private long run(Operation operation) throws JsonProcessingException {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            sink += operation.build().hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private HttpRequest templatedFeed() {
+        return requestTemplates.feed(ACCOUNT_UID, CATEGORY_UID, interval);
+    }
+
+    private HttpRequest templatedTransfer() throws JsonProcessingException {
+        return requestTemplates.transfer(ACCOUNT_UID, SAVINGS_GOAL_UID, TRANSFER_UID, savingsGoalTransfer());
+    }
+
+    private HttpRequest formattedFeed() {
+        String path = String.format(
+                "/api/v2/feed/account/%s/category/%s/transactions-between?minTransactionTimestamp=%s&maxTransactionTimestamp=%s",
+                ACCOUNT_UID,
+                CATEGORY_UID,
+                interval.getBegin(),
+                interval.getEnd()
+        );
+
+        return HttpRequest.newBuilder()
+                .GET()
+                .uri(URI.create(configuration.getBaseUrl()).resolve(path))
+                .header("Authorization", "Bearer " + ACCESS_TOKEN)
+                .timeout(requestTimeout(Endpoint.FEED))
+                .build();
+    }
+
+    private HttpRequest formattedTransfer() throws JsonProcessingException {
+        String path = String.format(
+                "/api/v2/account/%s/savings-goals/%s/add-money/%s",
+                ACCOUNT_UID,
+                SAVINGS_GOAL_UID,
+                TRANSFER_UID
+        );
+
+        return HttpRequest.newBuilder()
+                .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(savingsGoalTransfer())))
+                .uri(URI.create(configuration.getBaseUrl()).resolve(path))
+                .header("Authorization", "Bearer " + ACCESS_TOKEN)
+                .header("Content-Type", "application/json")
+                .timeout(requestTimeout(Endpoint.TRANSFER))
+                .build();
+    }
+
+    private Duration requestTimeout(Endpoint endpoint) {
+        return configuration.getEndpointPolicy(endpoint).getRequestTimeout();
+    }
+
+    private static SavingsGoalTransfer savingsGoalTransfer() {
+        return new SavingsGoalTransfer(new SavingsGoalTransfer.Amount("GBP", 158));
+    }
+
+    private static class Result {
+        private final double nanos;
+        private final double bytes;
+
+        private Result(double nanos, double bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        HttpRequest build() throws JsonProcessingException;
+    }
+}
@@ -1,28 +1,242 @@
 package com.michielboekhoff.starlingtest;
 
+import com.michielboekhoff.starlingtest.batch.BatchRunner;
+import com.michielboekhoff.starlingtest.batch.Customer;
+import com.michielboekhoff.starlingtest.batch.MergedMetrics;
+import com.michielboekhoff.starlingtest.batch.ShardMerger;
+import com.michielboekhoff.starlingtest.batch.ShardMetrics;
+import com.michielboekhoff.starlingtest.batch.ShardSpec;
 import com.michielboekhoff.starlingtest.client.ApiClient;
 import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.config.ExecutionStrategy;
+import com.michielboekhoff.starlingtest.dedup.PersistentSeenFeedItems;
+import com.michielboekhoff.starlingtest.progress.ProgressReporter;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.JsonLinesRunLog;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
 import com.michielboekhoff.starlingtest.service.RoundupService;
+import com.michielboekhoff.starlingtest.training.TrainingRun;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class Main {
 
-    private static final String BASE_URL = "https://api-sandbox.starlingbank.com";
+    private static final String USAGE = "Usage: java -jar starling.jar <API TOKEN> <SAVINGS GOAL UID> [--run-log <FILE>] [OPTIONS]\n" +
+            "       java -jar starling.jar batch --customers <FILE> --shard <INDEX>/<COUNT> --work-dir <DIR> [--shard-key token|account] [OPTIONS]\n" +
+            "       java -jar starling.jar merge --work-dir <DIR>\n" +
+            "       java -jar starling.jar --training-run\n" +
+            "Options:\n" +
+            "       --strategy sequential|concurrent|pipelined|virtual-threads\n" +
+            "       --max-in-flight <REQUESTS>\n" +
+            "       --seen-items <DIR>\n" +
+            "       --progress <SECONDS>\n" +
+            "       --progress-file <FILE>";
 
     public static void main(String[] args) {
 
-        if (args.length < 2) {
-            System.out.println("Usage: java -jar starling.jar <API TOKEN> <SAVINGS GOAL UID>");
+        if (args.length == 1 && "--training-run".equals(args[0])) {
+            trainingRun();
+            return;
+        }
+
+        if (args.length > 0 && "batch".equals(args[0])) {
+            batch(options(args, 1));
+            return;
+        }
+
+        if (args.length > 0 && "merge".equals(args[0])) {
+            merge(options(args, 1));
+            return;
+        }
+
+        Map<String, String> options = args.length >= 2 ? options(args, 2) : null;
+        if (options == null || !List.of("--run-log", "--strategy", "--max-in-flight", "--seen-items", "--progress", "--progress-file").containsAll(options.keySet())) {
+            System.out.println(USAGE);
+            return;
         }
 
         String apiToken = args[0];
         String savingsGoalUid = args[1];
-        ApiClient apiClient = new ApiClient(BASE_URL, apiToken);
-        RoundupService roundupService = new RoundupService(apiClient);
+        Path runLogFile = options.containsKey("--run-log") ? Paths.get(options.get("--run-log")) : null;
 
+        Configuration configuration;
         try {
-            roundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(savingsGoalUid);
+            configuration = configuration(options);
+        } catch (IllegalArgumentException illegalArgumentException) {
+            System.out.println(illegalArgumentException.getMessage());
+            return;
+        }
+        ApiClient apiClient = new ApiClient(configuration, apiToken);
+
+        try (RunLog runLog = openRunLog(runLogFile, configuration);
+             ProgressReporter progressReporter = startProgressReporter(options, configuration)) {
+            RoundupService roundupService = new RoundupService(apiClient, configuration, runLog);
+            List<AccountOutcome> outcomes = roundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(savingsGoalUid);
+            printSummary(outcomes);
         } catch (ApiException apiException) {
             System.out.println("Could not retrieve information from Starling API, cause: " + apiException.getMessage());
+        } catch (IllegalArgumentException illegalArgumentException) {
+            System.out.println(illegalArgumentException.getMessage());
+        } catch (IOException ioException) {
+            System.out.println("Could not open run log, cause: " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Rounds up against a local stub of the API; used to record the class-data-sharing archive.
+     */
+    private static void trainingRun() {
+        try {
+            printSummary(new TrainingRun().run());
+        } catch (IOException ioException) {
+            System.out.println("Could not start training stub, cause: " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Rounds up the customers owned by one shard. Every shard of a batch is started with the same customers file and
+     * work directory, on any node that can reach them.
+     */
+    private static void batch(Map<String, String> options) {
+        if (options == null || !options.keySet().containsAll(List.of("--customers", "--shard", "--work-dir"))) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        try {
+            ShardSpec shard = ShardSpec.parse(options.get("--shard"));
+            BatchRunner.ShardKey shardKey = BatchRunner.ShardKey.valueOf(
+                    options.getOrDefault("--shard-key", "token").toUpperCase(Locale.ROOT));
+            List<Customer> customers = Customer.readAll(Paths.get(options.get("--customers")));
+
+            Configuration configuration = configuration(options);
+            ShardMetrics metrics;
+            try (ProgressReporter progressReporter = startProgressReporter(options, configuration)) {
+                metrics = new BatchRunner(configuration, shard, shardKey, Paths.get(options.get("--work-dir")))
+                        .run(customers);
+            }
+
+            System.out.printf("Shard %s: rounded up %d accounts for %d customers, %d accounts failed, %d customers failed, %d accounts already done%n",
+                    metrics.getShard(), metrics.getAccountsSucceeded(), metrics.getCustomers(), metrics.getAccountsFailed(),
+                    metrics.getCustomersFailed(), metrics.getAccountsSkipped());
+        } catch (IllegalArgumentException illegalArgumentException) {
+            System.out.println(illegalArgumentException.getMessage());
+        } catch (IOException ioException) {
+            System.out.println("Could not run shard, cause: " + ioException.getMessage());
         }
     }
+
+    private static void merge(Map<String, String> options) {
+        if (options == null || !options.containsKey("--work-dir")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        try {
+            MergedMetrics metrics = new ShardMerger(Configuration.defaultObjectMapper())
+                    .merge(Paths.get(options.get("--work-dir")));
+
+            System.out.printf("Merged %d shards: %d accounts rounded up, %d accounts failed%n",
+                    metrics.getShards(), metrics.getAccountsSucceeded(), metrics.getAccountsFailed());
+            if (!metrics.getMissingShards().isEmpty()) {
+                System.out.println("Shards without metrics: " + metrics.getMissingShards());
+            }
+        } catch (IOException ioException) {
+            System.out.println("Could not merge shards, cause: " + ioException.getMessage());
+        }
+    }
+
+    private static Configuration configuration(Map<String, String> options) {
+        Configuration.Builder configuration = Configuration.builder();
+        if (options.containsKey("--strategy")) {
+            configuration.executionStrategy(executionStrategy(options.get("--strategy")));
+        }
+        if (options.containsKey("--max-in-flight")) {
+            configuration.maxInFlightRequests(number("--max-in-flight", options.get("--max-in-flight")));
+        }
+        if (options.containsKey("--seen-items")) {
+            configuration.seenFeedItems(new PersistentSeenFeedItems(Paths.get(options.get("--seen-items"))));
+        }
+        return configuration.build();
+    }
+
+    private static ExecutionStrategy executionStrategy(String strategy) {
+        try {
+            return ExecutionStrategy.valueOf(strategy.replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("--strategy must be sequential, concurrent, pipelined or virtual-threads, was " + strategy);
+        }
+    }
+
+    private static int number(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " must be a number, was " + value);
+        }
+    }
+
+    /**
+     * Starts reporting progress every {@code --progress} seconds, to {@code --progress-file} when given and to standard
+     * error otherwise, or returns {@code null} when neither is given.
+     */
+    private static ProgressReporter startProgressReporter(Map<String, String> options, Configuration configuration) {
+        if (!options.containsKey("--progress") && !options.containsKey("--progress-file")) {
+            return null;
+        }
+
+        Duration interval;
+        try {
+            interval = Duration.ofSeconds(Long.parseLong(options.getOrDefault("--progress", "10")));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--progress must be a number of seconds, was " + options.get("--progress"));
+        }
+        if (options.containsKey("--progress-file")) {
+            return ProgressReporter.toFile(configuration, Paths.get(options.get("--progress-file")), interval);
+        }
+        return ProgressReporter.toStream(configuration, System.err, interval);
+    }
+
+    /**
+     * Reads the {@code --name value} pairs from the given index on, or returns {@code null} when they are malformed.
+     */
+    private static Map<String, String> options(String[] args, int from) {
+        if ((args.length - from) % 2 != 0) {
+            return null;
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = from; i < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                return null;
+            }
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    private static RunLog openRunLog(Path runLogFile, Configuration configuration) throws IOException {
+        if (runLogFile == null) {
+            return RunLog.noOp();
+        }
+        return new JsonLinesRunLog(runLogFile, configuration.getObjectMapper());
+    }
+
+    private static void printSummary(List<AccountOutcome> outcomes) {
+        long failed = outcomes.stream().filter(outcome -> !outcome.isSuccessful()).count();
+        System.out.printf("Rounded up %d of %d accounts%n", outcomes.size() - failed, outcomes.size());
+
+        outcomes.stream()
+                .filter(outcome -> !outcome.isSuccessful())
+                .forEach(outcome -> System.out.printf("Could not round up account %s, cause: %s%n",
+                        outcome.getAccountUid(), outcome.getErrorClass()));
+    }
 }
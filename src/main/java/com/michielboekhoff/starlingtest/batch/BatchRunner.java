@@ -0,0 +1,161 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.michielboekhoff.starlingtest.client.ApiClient;
+import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.domain.Account;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.JsonLinesRunLog;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
+import com.michielboekhoff.starlingtest.service.RoundupService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Rounds up the customers that belong to one shard.
+ * <p>
+ * All state lives in files named after the shard in a work directory that every node can reach: the results (the run
+ * log of the shard), the checkpoint and the metrics. Shards never write to each other's files, so they can run on any
+ * number of nodes at once, and a failed shard can be restarted on its own. Use a fresh work directory for every batch.
+ */
+public class BatchRunner {
+
+    public static final String RESULTS_SUFFIX = ".results.jsonl";
+    public static final String METRICS_SUFFIX = ".metrics.jsonl";
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /**
+     * What customers are divided over shards by.
+     */
+    public enum ShardKey {
+        /**
+         * Each customer is handled entirely by the shard owning its API token.
+         */
+        TOKEN,
+
+        /**
+         * Every shard lists the accounts of every customer and rounds up the accounts it owns. This spreads customers
+         * with many accounts over several shards, at the cost of listing every customer's accounts on every shard. A
+         * customer is still only counted, and counted as failed, by the shard owning its API token, so that the customer
+         * totals of all shards add up.
+         */
+        ACCOUNT
+    }
+
+    private final Configuration configuration;
+    private final ShardSpec shard;
+    private final ShardKey shardKey;
+    private final Path workDirectory;
+
+    public BatchRunner(Configuration configuration, ShardSpec shard, ShardKey shardKey, Path workDirectory) {
+        this.configuration = configuration;
+        this.shard = shard;
+        this.shardKey = shardKey;
+        this.workDirectory = workDirectory;
+    }
+
+    public ShardMetrics run(List<Customer> customers) throws IOException {
+        Files.createDirectories(workDirectory);
+        Instant startedAt = configuration.getClock().instant();
+        long start = System.nanoTime();
+
+        int customersRun = 0;
+        int customersFailed = 0;
+        AtomicInteger accountsSkipped = new AtomicInteger();
+        int accountsSucceeded = 0;
+        int accountsFailed = 0;
+        long roundUpMinorUnits = 0;
+
+        try (Checkpoint checkpoint = new Checkpoint(shardFile(CHECKPOINT_SUFFIX));
+             JsonLinesRunLog results = new JsonLinesRunLog(shardFile(RESULTS_SUFFIX), configuration.getObjectMapper())) {
+            RunLog runLog = RunLog.all(results, checkpoint);
+            Predicate<Account> accountFilter = account -> {
+                if (shardKey == ShardKey.ACCOUNT && !shard.owns(account.getAccountUid())) {
+                    return false;
+                }
+                if (checkpoint.isCompleted(account.getAccountUid())) {
+                    accountsSkipped.incrementAndGet();
+                    return false;
+                }
+                return true;
+            };
+
+            List<Customer> ownedCustomers = customers.stream()
+                    .filter(customer -> shardKey != ShardKey.TOKEN || shard.owns(customer.getApiToken()))
+                    .collect(Collectors.toList());
+            configuration.getRunProgress().customersFound(ownedCustomers.size());
+
+            for (Customer customer : ownedCustomers) {
+                boolean countsCustomer = shard.owns(customer.getApiToken());
+                if (countsCustomer) {
+                    customersRun++;
+                }
+
+                ApiClient apiClient = new ApiClient(configuration, customer.getApiToken());
+                RoundupService roundupService = new RoundupService(apiClient, configuration, runLog);
+
+                try {
+                    List<AccountOutcome> outcomes = roundupService
+                            .roundUpTransactionsFromLastWeekIntoSavingsGoal(customer.getSavingsGoalUid(), accountFilter);
+
+                    for (AccountOutcome outcome : outcomes) {
+                        if (outcome.isSuccessful()) {
+                            accountsSucceeded++;
+                            roundUpMinorUnits += outcome.getRoundUpMinorUnits();
+                        } else {
+                            accountsFailed++;
+                        }
+                    }
+                } catch (ApiException apiException) {
+                    if (countsCustomer) {
+                        customersFailed++;
+                    }
+                    System.err.printf("Could not round up customer %s, cause: %s%n",
+                            ShardSpec.fingerprint(customer.getApiToken()), apiException.getMessage());
+                }
+                configuration.getRunProgress().customerCompleted();
+            }
+        }
+
+        ShardMetrics metrics = new ShardMetrics(
+                shard.toString(),
+                startedAt.toString(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                customersRun,
+                customersFailed,
+                accountsSkipped.get(),
+                accountsSucceeded,
+                accountsFailed,
+                roundUpMinorUnits
+        );
+        appendMetrics(metrics);
+
+        return metrics;
+    }
+
+    private void appendMetrics(ShardMetrics metrics) throws IOException {
+        String line = configuration.getObjectMapper().writeValueAsString(metrics) + System.lineSeparator();
+        Files.writeString(
+                shardFile(METRICS_SUFFIX),
+                line,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND
+        );
+    }
+
+    private Path shardFile(String suffix) {
+        return workDirectory.resolve(shard.getFilePrefix() + suffix);
+    }
+}
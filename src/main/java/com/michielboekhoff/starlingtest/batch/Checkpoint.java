@@ -0,0 +1,85 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The accounts a shard has already rounded up, one account UID per line.
+ * <p>
+ * An account is appended and flushed as soon as its transfer has succeeded, so when a shard is restarted after a crash
+ * it skips exactly the accounts that have been paid into already. Failed accounts are not checkpointed and are retried.
+ * <p>
+ * Unlike {@link com.michielboekhoff.starlingtest.runlog.JsonLinesRunLog}, this is a durable, blocking log: recording a
+ * succeeded account writes and flushes it on the calling thread, under a lock shared by all threads, before it returns.
+ * Handing the write to a background thread would let a crash lose accounts that have been paid into, which a restarted
+ * shard would then pay into again. Failed accounts are never written, and so never wait.
+ * <p>
+ * A checkpoint that cannot be written is reported rather than thrown: the account has been paid into by then, and must
+ * not be recorded as failed because of it.
+ */
+public class Checkpoint implements RunLog {
+
+    private final Set<String> completedAccountUids;
+    private final BufferedWriter writer;
+
+    public Checkpoint(Path file) throws IOException {
+        this.completedAccountUids = new HashSet<>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    completedAccountUids.add(line.trim());
+                }
+            }
+        }
+
+        this.writer = Files.newBufferedWriter(
+                file,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND
+        );
+    }
+
+    public synchronized boolean isCompleted(String accountUid) {
+        return completedAccountUids.contains(accountUid);
+    }
+
+    public synchronized int getCompletedCount() {
+        return completedAccountUids.size();
+    }
+
+    @Override
+    public synchronized void record(AccountOutcome outcome) {
+        if (!outcome.isSuccessful() || !completedAccountUids.add(outcome.getAccountUid())) {
+            return;
+        }
+
+        try {
+            writer.write(outcome.getAccountUid());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.printf("Could not checkpoint account %s, a restarted shard will round it up again. Cause: %s%n",
+                    outcome.getAccountUid(), e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Could not close checkpoint, cause: " + e.getMessage());
+        }
+    }
+}
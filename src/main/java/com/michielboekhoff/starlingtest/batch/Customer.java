@@ -0,0 +1,53 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Customer {
+
+    private final String apiToken;
+    private final String savingsGoalUid;
+
+    public Customer(String apiToken, String savingsGoalUid) {
+        this.apiToken = apiToken;
+        this.savingsGoalUid = savingsGoalUid;
+    }
+
+    /**
+     * Reads one customer per line, as an API token and a savings goal UID separated by whitespace. Blank lines and
+     * lines starting with {@code #} are skipped.
+     */
+    public static List<Customer> readAll(Path file) throws IOException {
+        List<Customer> customers = new ArrayList<>();
+        int lineNumber = 0;
+
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = trimmed.split("\\s+");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException(String.format(
+                        "Line %d of %s should hold an API token and a savings goal UID", lineNumber, file));
+            }
+            customers.add(new Customer(fields[0], fields[1]));
+        }
+
+        return customers;
+    }
+
+    public String getApiToken() {
+        return apiToken;
+    }
+
+    public String getSavingsGoalUid() {
+        return savingsGoalUid;
+    }
+}
@@ -0,0 +1,91 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Totals over every shard of a batch. Customer counts come from the last attempt at each shard, account counts from
+ * the final outcome of each account.
+ */
+public class MergedMetrics {
+
+    @JsonProperty("shards")
+    private final int shards;
+
+    @JsonProperty("missingShards")
+    private final List<Integer> missingShards;
+
+    @JsonProperty("attempts")
+    private final int attempts;
+
+    @JsonProperty("totalDurationMillis")
+    private final long totalDurationMillis;
+
+    @JsonProperty("customers")
+    private final int customers;
+
+    @JsonProperty("customersFailed")
+    private final int customersFailed;
+
+    @JsonProperty("accountsSucceeded")
+    private final int accountsSucceeded;
+
+    @JsonProperty("accountsFailed")
+    private final int accountsFailed;
+
+    @JsonProperty("roundUpMinorUnits")
+    private final long roundUpMinorUnits;
+
+    public MergedMetrics(int shards,
+                         List<Integer> missingShards,
+                         int attempts,
+                         long totalDurationMillis,
+                         int customers,
+                         int customersFailed,
+                         int accountsSucceeded,
+                         int accountsFailed,
+                         long roundUpMinorUnits) {
+        this.shards = shards;
+        this.missingShards = List.copyOf(missingShards);
+        this.attempts = attempts;
+        this.totalDurationMillis = totalDurationMillis;
+        this.customers = customers;
+        this.customersFailed = customersFailed;
+        this.accountsSucceeded = accountsSucceeded;
+        this.accountsFailed = accountsFailed;
+        this.roundUpMinorUnits = roundUpMinorUnits;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public List<Integer> getMissingShards() {
+        return missingShards;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getCustomers() {
+        return customers;
+    }
+
+    public int getCustomersFailed() {
+        return customersFailed;
+    }
+
+    public int getAccountsSucceeded() {
+        return accountsSucceeded;
+    }
+
+    public int getAccountsFailed() {
+        return accountsFailed;
+    }
+
+    public long getRoundUpMinorUnits() {
+        return roundUpMinorUnits;
+    }
+}
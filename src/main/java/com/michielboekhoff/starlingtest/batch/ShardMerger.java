@@ -0,0 +1,135 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Combines the files written by every shard in a work directory into {@code merged.results.jsonl} and
+ * {@code merged.metrics.json}.
+ * <p>
+ * An account that was retried by a restarted shard appears more than once in that shard's results; only its last
+ * outcome is kept, so the merged results hold the final state of every account.
+ */
+public class ShardMerger {
+
+    public static final String MERGED_RESULTS_FILE = "merged.results.jsonl";
+    public static final String MERGED_METRICS_FILE = "merged.metrics.json";
+
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)-of-(\\d+)(\\..+)");
+
+    private final ObjectMapper objectMapper;
+
+    public ShardMerger(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public MergedMetrics merge(Path workDirectory) throws IOException {
+        Map<String, JsonNode> finalOutcomes = new LinkedHashMap<>();
+        List<ShardMetrics> attempts = new ArrayList<>();
+        Map<Integer, ShardMetrics> lastAttemptPerShard = new TreeMap<>();
+        int shardCount = 0;
+
+        for (Path file : shardFiles(workDirectory)) {
+            Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            int index = Integer.parseInt(matcher.group(1));
+            int count = Integer.parseInt(matcher.group(2));
+            String suffix = matcher.group(3);
+
+            if (shardCount != 0 && shardCount != count) {
+                throw new IllegalStateException(String.format(
+                        "Work directory %s holds files for both %d and %d shards", workDirectory, shardCount, count));
+            }
+            shardCount = count;
+
+            if (BatchRunner.RESULTS_SUFFIX.equals(suffix)) {
+                for (JsonNode outcome : readLines(file)) {
+                    String accountUid = outcome.path("accountUid").asText();
+                    finalOutcomes.remove(accountUid);
+                    finalOutcomes.put(accountUid, outcome);
+                }
+            } else if (BatchRunner.METRICS_SUFFIX.equals(suffix)) {
+                for (JsonNode line : readLines(file)) {
+                    ShardMetrics metrics = objectMapper.treeToValue(line, ShardMetrics.class);
+                    attempts.add(metrics);
+                    lastAttemptPerShard.put(index, metrics);
+                }
+            }
+        }
+
+        int accountsSucceeded = 0;
+        int accountsFailed = 0;
+        long roundUpMinorUnits = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(workDirectory.resolve(MERGED_RESULTS_FILE), StandardCharsets.UTF_8)) {
+            for (JsonNode outcome : finalOutcomes.values()) {
+                if (AccountOutcome.Status.SUCCEEDED.name().equals(outcome.path("status").asText())) {
+                    accountsSucceeded++;
+                    roundUpMinorUnits += outcome.path("roundUpMinorUnits").asLong();
+                } else {
+                    accountsFailed++;
+                }
+                writer.write(objectMapper.writeValueAsString(outcome));
+                writer.newLine();
+            }
+        }
+
+        TreeSet<Integer> missingShards = new TreeSet<>();
+        for (int index = 0; index < shardCount; index++) {
+            if (!lastAttemptPerShard.containsKey(index)) {
+                missingShards.add(index);
+            }
+        }
+
+        MergedMetrics merged = new MergedMetrics(
+                shardCount,
+                new ArrayList<>(missingShards),
+                attempts.size(),
+                attempts.stream().mapToLong(ShardMetrics::getDurationMillis).sum(),
+                lastAttemptPerShard.values().stream().mapToInt(ShardMetrics::getCustomers).sum(),
+                lastAttemptPerShard.values().stream().mapToInt(ShardMetrics::getCustomersFailed).sum(),
+                accountsSucceeded,
+                accountsFailed,
+                roundUpMinorUnits
+        );
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(workDirectory.resolve(MERGED_METRICS_FILE).toFile(), merged);
+
+        return merged;
+    }
+
+    private List<Path> shardFiles(Path workDirectory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(workDirectory, "shard-*")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private List<JsonNode> readLines(Path file) throws IOException {
+        List<JsonNode> nodes = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                nodes.add(objectMapper.readTree(line));
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,93 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Counts for a single attempt at running a shard. Every attempt appends one of these to the shard's metrics file.
+ * <p>
+ * Customers are counted by the shard owning their API token, whichever the shard key, so every customer is counted by
+ * exactly one shard. Accounts are counted by the shard that rounded them up.
+ */
+public class ShardMetrics {
+
+    @JsonProperty("shard")
+    private final String shard;
+
+    @JsonProperty("startedAt")
+    private final String startedAt;
+
+    @JsonProperty("durationMillis")
+    private final long durationMillis;
+
+    @JsonProperty("customers")
+    private final int customers;
+
+    @JsonProperty("customersFailed")
+    private final int customersFailed;
+
+    @JsonProperty("accountsSkipped")
+    private final int accountsSkipped;
+
+    @JsonProperty("accountsSucceeded")
+    private final int accountsSucceeded;
+
+    @JsonProperty("accountsFailed")
+    private final int accountsFailed;
+
+    @JsonProperty("roundUpMinorUnits")
+    private final long roundUpMinorUnits;
+
+    @JsonCreator
+    public ShardMetrics(@JsonProperty("shard") String shard,
+                        @JsonProperty("startedAt") String startedAt,
+                        @JsonProperty("durationMillis") long durationMillis,
+                        @JsonProperty("customers") int customers,
+                        @JsonProperty("customersFailed") int customersFailed,
+                        @JsonProperty("accountsSkipped") int accountsSkipped,
+                        @JsonProperty("accountsSucceeded") int accountsSucceeded,
+                        @JsonProperty("accountsFailed") int accountsFailed,
+                        @JsonProperty("roundUpMinorUnits") long roundUpMinorUnits) {
+        this.shard = shard;
+        this.startedAt = startedAt;
+        this.durationMillis = durationMillis;
+        this.customers = customers;
+        this.customersFailed = customersFailed;
+        this.accountsSkipped = accountsSkipped;
+        this.accountsSucceeded = accountsSucceeded;
+        this.accountsFailed = accountsFailed;
+        this.roundUpMinorUnits = roundUpMinorUnits;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getCustomers() {
+        return customers;
+    }
+
+    public int getCustomersFailed() {
+        return customersFailed;
+    }
+
+    public int getAccountsSkipped() {
+        return accountsSkipped;
+    }
+
+    public int getAccountsSucceeded() {
+        return accountsSucceeded;
+    }
+
+    public int getAccountsFailed() {
+        return accountsFailed;
+    }
+
+    public long getRoundUpMinorUnits() {
+        return roundUpMinorUnits;
+    }
+}
@@ -0,0 +1,79 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.michielboekhoff.starlingtest.hash.Fnv1a;
+
+/**
+ * Shard {@code index} of {@code count}, written as {@code index/count} with a zero-based index.
+ * <p>
+ * Keys are assigned to shards by a 64-bit {@link Fnv1a} hash of their UTF-8 bytes. Unlike {@link String#hashCode()} it
+ * spreads similar keys evenly, and unlike {@link Object#hashCode()} it is the same on every node and JVM, so every node
+ * agrees on which shard owns which customer without talking to the others.
+ */
+public class ShardSpec {
+
+    private final int index;
+    private final int count;
+
+    public ShardSpec(int index, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1, was " + count);
+        }
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException(String.format("Shard index must be between 0 and %d, was %d", count - 1, index));
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    public static ShardSpec single() {
+        return new ShardSpec(0, 1);
+    }
+
+    public static ShardSpec parse(String spec) {
+        int slash = spec.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Shard must be given as <index>/<count>, was " + spec);
+        }
+
+        try {
+            return new ShardSpec(Integer.parseInt(spec.substring(0, slash)), Integer.parseInt(spec.substring(slash + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard must be given as <index>/<count>, was " + spec, e);
+        }
+    }
+
+    public boolean owns(String key) {
+        return shardOf(key, count) == index;
+    }
+
+    public static int shardOf(String key, int count) {
+        return (int) Long.remainderUnsigned(Fnv1a.hash(key), count);
+    }
+
+    /**
+     * A stable fingerprint of a key, for referring to secrets such as API tokens in files and logs.
+     */
+    public static String fingerprint(String key) {
+        return String.format("%016x", Fnv1a.hash(key));
+    }
+
+    /**
+     * The prefix of every file belonging to this shard, for example {@code shard-2-of-8}.
+     */
+    public String getFilePrefix() {
+        return String.format("shard-%d-of-%d", index, count);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -1,112 +1,210 @@
 package com.michielboekhoff.starlingtest.client;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.dedup.FeedItemUidSet;
 import com.michielboekhoff.starlingtest.domain.Account;
 import com.michielboekhoff.starlingtest.domain.Transaction;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 public class ApiClient {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper()
-            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final String FEED_API_ERROR_MESSAGE = "Could not get accounts data from Transaction Feed API";
 
-    private static final String ACCOUNTS_API_PATH = "/api/v2/accounts";
-    private static final String TRANSACTIONS_FEED_API_PATH_FORMAT = "/api/v2/feed/account/%s/category/%s/transactions-between?minTransactionTimestamp=%s&maxTransactionTimestamp=%s";
-    private static final String SAVINGS_GOALS_TRANSFER_API_PATH_FORMAT = "/api/v2/account/%s/savings-goals/%s/add-money/%s";
-
-    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
-
-    private final String baseUrl;
-    private final String accessToken;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Configuration configuration;
+    private final RequestTemplates requestTemplates;
 
     public ApiClient(String baseUrl, String accessToken) {
-        this.baseUrl = baseUrl;
-        this.accessToken = accessToken;
+        this(Configuration.builder().baseUrl(baseUrl).build(), accessToken);
+    }
+
+    public ApiClient(Configuration configuration, String accessToken) {
+        this.httpClient = configuration.getHttpClient();
+        this.objectMapper = configuration.getObjectMapper();
+        this.configuration = configuration;
+        this.requestTemplates = new RequestTemplates(configuration, accessToken);
     }
 
     public List<Account> getAllAccounts() {
-        HttpRequest request = HttpRequest.newBuilder()
-                .GET()
-                .uri(resolveRelativeToBaseUrl(ACCOUNTS_API_PATH))
-                .header("Authorization", bearerToken())
-                .build();
+        HttpRequest request = requestTemplates.accounts();
 
         try {
-            AccountsWrapper accountsWrapper = executeRequest(request, AccountsWrapper.class);
+            AccountsWrapper accountsWrapper = executeRequest(Endpoint.ACCOUNTS, request, AccountsWrapper.class);
             return accountsWrapper.getAccounts();
         } catch (IOException | InterruptedException e) {
             throw new ApiException("Could not get accounts data from Accounts API", e);
         }
     }
 
-    public List<Transaction> getAllTransactionsForAccountAndDefaultCategoryInInterval(Account account,
-                                                                                      Interval interval) {
-        HttpRequest request = HttpRequest.newBuilder()
-                .GET()
-                .uri(getFeedUrlForAccountAndInterval(account, interval))
-                .header("Authorization", bearerToken())
-                .build();
+    /**
+     * Returns the default category of the account, followed by the categories of all of its spending spaces.
+     */
+    public List<String> getAllCategoriesForAccount(Account account) {
+        HttpRequest request = requestTemplates.spaces(account.getAccountUid());
 
         try {
-            FeedsWrapper feedsWrapper = executeRequest(request, FeedsWrapper.class);
-            return feedsWrapper.getTransactions();
-        } catch (InterruptedException | IOException e) {
-            throw new ApiException("Could not get accounts data from Transaction Feed API", e);
+            SpacesWrapper spacesWrapper = executeRequest(Endpoint.SPACES, request, SpacesWrapper.class);
+            Set<String> categories = new LinkedHashSet<>();
+            categories.add(account.getDefaultCategory());
+            categories.addAll(spacesWrapper.getCategoryUids());
+            return new ArrayList<>(categories);
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("Could not get spaces data from Spaces API", e);
+        }
+    }
+
+    /**
+     * Fetches the feeds of all categories of the account concurrently, and merges them into a single list in which
+     * every feed item occurs once.
+     */
+    public List<Transaction> getAllTransactionsForAccountInInterval(Account account, Interval interval) {
+        return parseFeeds(getAllRawFeedsForAccountInInterval(account, interval));
+    }
+
+    public List<Transaction> getAllTransactionsForAccountAndCategoryInInterval(Account account,
+                                                                               String categoryUid,
+                                                                               Interval interval) {
+        return parseFeeds(List.of(awaitFeed(getRawFeedForAccountAndCategoryInIntervalAsync(account, categoryUid, interval))));
+    }
+
+    /**
+     * Fetches the feeds of all categories of the account concurrently, without parsing them. Together with
+     * {@link #parseFeeds(List)} this allows callers to do the network I/O and the parsing on different threads.
+     */
+    public List<String> getAllRawFeedsForAccountInInterval(Account account, Interval interval) {
+        List<CompletableFuture<String>> feeds = getAllCategoriesForAccount(account).stream()
+                .map(categoryUid -> getRawFeedForAccountAndCategoryInIntervalAsync(account, categoryUid, interval))
+                .collect(Collectors.toList());
+
+        List<String> rawFeeds = new ArrayList<>(feeds.size());
+        for (CompletableFuture<String> feed : feeds) {
+            rawFeeds.add(awaitFeed(feed));
+        }
+
+        return rawFeeds;
+    }
+
+    /**
+     * Parses feeds as returned by {@link #getAllRawFeedsForAccountInInterval(Account, Interval)} into a single list in
+     * which every feed item occurs once.
+     */
+    public List<Transaction> parseFeeds(List<String> rawFeeds) {
+        List<Transaction> transactions = new ArrayList<>();
+        FeedItemUidSet seenFeedItemUids = new FeedItemUidSet();
+
+        try {
+            for (String rawFeed : rawFeeds) {
+                for (Transaction transaction : objectMapper.readValue(rawFeed, FeedsWrapper.class).getTransactions()) {
+                    if (seenFeedItemUids.add(transaction.getFeedItemUid())) {
+                        transactions.add(transaction);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ApiException(FEED_API_ERROR_MESSAGE, e);
         }
+
+        return transactions;
     }
 
-    public void transferIntoSavingsGoalForAccount(Account account, String savingsGoalUid, BigDecimal amount) {
+    public TransferReceipt transferIntoSavingsGoalForAccount(Account account, String savingsGoalUid, BigDecimal amount) {
         SavingsGoalTransfer savingsGoalTransfer = new SavingsGoalTransfer(
                 new SavingsGoalTransfer.Amount("GBP", toMinorUnits(amount))
         );
 
         try {
-            String json = objectMapper.writeValueAsString(savingsGoalTransfer);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .PUT(HttpRequest.BodyPublishers.ofString(json))
-                    .uri(getSavingsGoalUrlForAccountAndSavingsGoal(account, savingsGoalUid))
-                    .header("Authorization", bearerToken())
-                    .header("Content-Type", "application/json")
-                    .build();
-            executeRequest(request);
+            HttpRequest request = requestTemplates.transfer(
+                    account.getAccountUid(),
+                    savingsGoalUid,
+                    UUID.randomUUID().toString(),
+                    savingsGoalTransfer
+            );
+            HttpResponse<String> response = configuration.getEndpointGuard(Endpoint.TRANSFER)
+                    .send(() -> httpClient.send(request, BodyHandlers.ofString()));
+            ensureSuccessful(response);
+            return new TransferReceipt(readTransferUid(response), response.statusCode());
         } catch (InterruptedException | IOException e) {
             throw new ApiException("Could not transfer savings via Savings Goals API", e);
         }
     }
 
-    private String bearerToken() {
-        return "Bearer " + accessToken;
+    /**
+     * Any successful status means the money has moved, so a body that cannot be read must not fail the transfer: the
+     * account would be retried, and paid into twice, on the next run.
+     */
+    private String readTransferUid(HttpResponse<String> response) {
+        try {
+            return objectMapper.readValue(response.body(), SavingsGoalTransferResponse.class).getTransferUid();
+        } catch (JsonProcessingException e) {
+            return null;
+        }
     }
 
     private long toMinorUnits(BigDecimal amount) {
         return amount.movePointRight(2).longValue();
     }
 
-    private <T> T executeRequest(HttpRequest request, Class<T> klass) throws IOException, InterruptedException {
-        HttpResponse<String> response = HTTP_CLIENT.send(request, BodyHandlers.ofString());
+    private CompletableFuture<String> getRawFeedForAccountAndCategoryInIntervalAsync(Account account,
+                                                                                   String categoryUid,
+                                                                                   Interval interval) {
+        HttpRequest request = requestTemplates.feed(account.getAccountUid(), categoryUid, interval);
+
+        return configuration.getEndpointGuard(Endpoint.FEED)
+                .sendAsync(() -> httpClient.sendAsync(request, BodyHandlers.ofString()))
+                .thenApply(response -> {
+                    ensureSuccessful(response);
+                    return response.body();
+                });
+    }
 
-        if (isNotSuccessful(response)) {
-            throw new ApiException(String.format("Status code %d returned by %s", response.statusCode(), response.uri().toString()));
+    private <T> T awaitFeed(CompletableFuture<T> feed) {
+        try {
+            return feed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(FEED_API_ERROR_MESSAGE, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException) {
+                throw (ApiException) e.getCause();
+            }
+            throw new ApiException(FEED_API_ERROR_MESSAGE, e.getCause());
         }
+    }
 
-        return objectMapper.readValue(response.body(), klass);
+    private <T> T executeRequest(Endpoint endpoint, HttpRequest request, Class<T> klass) throws IOException, InterruptedException {
+        HttpResponse<String> response = configuration.getEndpointGuard(endpoint)
+                .send(() -> httpClient.send(request, BodyHandlers.ofString()));
+        return readResponse(response, klass);
     }
 
-    private void executeRequest(HttpRequest request) throws IOException, InterruptedException {
-        HttpResponse<Void> response = HTTP_CLIENT.send(request, BodyHandlers.discarding());
+    private <T> T readResponse(HttpResponse<String> response, Class<T> klass) throws IOException {
+        ensureSuccessful(response);
+        return objectMapper.readValue(response.body(), klass);
+    }
 
+    private void ensureSuccessful(HttpResponse<?> response) {
         if (isNotSuccessful(response)) {
-            throw new ApiException(String.format("Status code %d returned by %s", response.statusCode(), response.uri().toString()));
+            throw new ApiException(
+                    String.format("Status code %d returned by %s", response.statusCode(), response.uri().toString()),
+                    response.statusCode()
+            );
         }
     }
 
@@ -114,31 +212,4 @@ public class ApiClient {
         return response.statusCode() < 200 || response.statusCode() > 299;
     }
 
-    private URI getFeedUrlForAccountAndInterval(Account account, Interval interval) {
-        String uriString = String.format(
-                TRANSACTIONS_FEED_API_PATH_FORMAT,
-                account.getAccountUid(),
-                account.getDefaultCategory(),
-                interval.getBegin(),
-                interval.getEnd()
-        );
-
-        return resolveRelativeToBaseUrl(uriString);
-    }
-
-    private URI getSavingsGoalUrlForAccountAndSavingsGoal(Account account, String savingsGoalUid) {
-        String uriString = String.format(
-                SAVINGS_GOALS_TRANSFER_API_PATH_FORMAT,
-                account.getAccountUid(),
-                savingsGoalUid,
-                UUID.randomUUID().toString()
-        );
-
-        return resolveRelativeToBaseUrl(uriString);
-    }
-
-    private URI resolveRelativeToBaseUrl(String path) {
-        return URI.create(baseUrl).resolve(path);
-    }
-
 }
@@ -1,11 +1,30 @@
 package com.michielboekhoff.starlingtest.client;
 
+import java.util.OptionalInt;
+
 public class ApiException extends RuntimeException {
+    private static final int NO_STATUS_CODE = -1;
+
+    private final int statusCode;
+
     public ApiException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = NO_STATUS_CODE;
     }
 
     public ApiException(String message) {
+        this(message, NO_STATUS_CODE);
+    }
+
+    public ApiException(String message, int statusCode) {
         super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * The HTTP status code the API responded with, if the request got as far as a response.
+     */
+    public OptionalInt getStatusCode() {
+        return statusCode == NO_STATUS_CODE ? OptionalInt.empty() : OptionalInt.of(statusCode);
     }
 }
@@ -0,0 +1,18 @@
+package com.michielboekhoff.starlingtest.client;
+
+/**
+ * Thrown without calling the API at all, because the endpoint is known to be failing or is already handling as many
+ * calls as it is allowed to.
+ */
+public class CallNotPermittedException extends ApiException {
+    private final Endpoint endpoint;
+
+    public CallNotPermittedException(Endpoint endpoint, String message) {
+        super(message);
+        this.endpoint = endpoint;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+}
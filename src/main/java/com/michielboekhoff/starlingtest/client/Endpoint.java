@@ -0,0 +1,12 @@
+package com.michielboekhoff.starlingtest.client;
+
+/**
+ * The Starling API endpoints this client calls. Each endpoint gets its own circuit breaker and bulkhead, so one
+ * degraded endpoint cannot take the others down with it.
+ */
+public enum Endpoint {
+    ACCOUNTS,
+    SPACES,
+    FEED,
+    TRANSFER
+}
@@ -0,0 +1,125 @@
+package com.michielboekhoff.starlingtest.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.michielboekhoff.starlingtest.config.Configuration;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Builds the requests sent by an {@link ApiClient}.
+ * <p>
+ * Everything that is the same for every request to an endpoint is prepared once: the origin of the base URL, the
+ * authorization header, the timeout and the writer for transfer bodies. Building a request then only appends its path
+ * to the origin and copies the builder of its endpoint; the accounts request has no parameters and is built just once.
+ */
+class RequestTemplates {
+
+    private static final String ACCOUNT_API_PATH = "/api/v2/account/";
+    private static final String ACCOUNTS_API_PATH = "/api/v2/accounts";
+    private static final String FEED_API_PATH = "/api/v2/feed/account/";
+
+    private final String origin;
+    private final Map<Endpoint, HttpRequest.Builder> builders;
+    private final HttpRequest accountsRequest;
+    private final ObjectWriter transferWriter;
+
+    private volatile IntervalQuery lastIntervalQuery;
+
+    RequestTemplates(Configuration configuration, String accessToken) {
+        URI baseUri = URI.create(configuration.getBaseUrl());
+        // Checked here rather than left to the first request, which would otherwise build a URI like "null://null".
+        if (baseUri.getScheme() == null || baseUri.getRawAuthority() == null) {
+            throw new IllegalArgumentException("Base URL must have a scheme and a host, was " + configuration.getBaseUrl());
+        }
+        // All paths are absolute, so resolving them against the base URL only ever keeps its scheme and authority.
+        this.origin = baseUri.getScheme() + "://" + baseUri.getRawAuthority();
+
+        String authorization = "Bearer " + accessToken;
+        this.builders = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .header("Authorization", authorization)
+                    .timeout(configuration.getEndpointPolicy(endpoint).getRequestTimeout());
+            if (endpoint == Endpoint.TRANSFER) {
+                builder.header("Content-Type", "application/json");
+            }
+            builders.put(endpoint, builder);
+        }
+
+        this.accountsRequest = builders.get(Endpoint.ACCOUNTS).copy()
+                .GET()
+                .uri(URI.create(origin + ACCOUNTS_API_PATH))
+                .build();
+        this.transferWriter = configuration.getObjectMapper().writerFor(SavingsGoalTransfer.class);
+    }
+
+    HttpRequest accounts() {
+        return accountsRequest;
+    }
+
+    HttpRequest spaces(String accountUid) {
+        String uri = origin + ACCOUNT_API_PATH + accountUid + "/spaces";
+
+        return builders.get(Endpoint.SPACES).copy()
+                .GET()
+                .uri(URI.create(uri))
+                .build();
+    }
+
+    HttpRequest feed(String accountUid, String categoryUid, Interval interval) {
+        String uri = new StringBuilder(256)
+                .append(origin)
+                .append(FEED_API_PATH).append(accountUid)
+                .append("/category/").append(categoryUid)
+                .append("/transactions-between?").append(intervalQuery(interval))
+                .toString();
+
+        return builders.get(Endpoint.FEED).copy()
+                .GET()
+                .uri(URI.create(uri))
+                .build();
+    }
+
+    HttpRequest transfer(String accountUid,
+                         String savingsGoalUid,
+                         String transferUid,
+                         SavingsGoalTransfer savingsGoalTransfer) throws JsonProcessingException {
+        String uri = new StringBuilder(160)
+                .append(origin)
+                .append(ACCOUNT_API_PATH).append(accountUid)
+                .append("/savings-goals/").append(savingsGoalUid)
+                .append("/add-money/").append(transferUid)
+                .toString();
+
+        return builders.get(Endpoint.TRANSFER).copy()
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(transferWriter.writeValueAsBytes(savingsGoalTransfer)))
+                .uri(URI.create(uri))
+                .build();
+    }
+
+    /**
+     * Every feed request of a run is for the same interval, so its timestamps are only formatted once per run.
+     */
+    private String intervalQuery(Interval interval) {
+        IntervalQuery intervalQuery = lastIntervalQuery;
+        if (intervalQuery == null || intervalQuery.interval != interval) {
+            intervalQuery = new IntervalQuery(interval);
+            lastIntervalQuery = intervalQuery;
+        }
+        return intervalQuery.query;
+    }
+
+    private static class IntervalQuery {
+        private final Interval interval;
+        private final String query;
+
+        private IntervalQuery(Interval interval) {
+            this.interval = interval;
+            this.query = "minTransactionTimestamp=" + interval.getBegin() + "&maxTransactionTimestamp=" + interval.getEnd();
+        }
+    }
+}
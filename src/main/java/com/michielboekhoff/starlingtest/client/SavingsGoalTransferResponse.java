@@ -0,0 +1,15 @@
+package com.michielboekhoff.starlingtest.client;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+class SavingsGoalTransferResponse {
+    private final String transferUid;
+
+    public SavingsGoalTransferResponse(@JsonProperty("transferUid") String transferUid) {
+        this.transferUid = transferUid;
+    }
+
+    public String getTransferUid() {
+        return transferUid;
+    }
+}
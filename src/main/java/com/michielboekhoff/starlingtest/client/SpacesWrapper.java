@@ -0,0 +1,36 @@
+package com.michielboekhoff.starlingtest.client;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+class SpacesWrapper {
+    private final List<SpendingSpace> spendingSpaces;
+
+    public SpacesWrapper(@JsonProperty(value = "spendingSpaces") List<SpendingSpace> spendingSpaces) {
+        this.spendingSpaces = spendingSpaces == null ? List.of() : spendingSpaces;
+    }
+
+    /**
+     * Spending spaces have their own category, which is where spending from that space shows up in the feed.
+     * Savings goals are left out on purpose: money moved into a goal is not spending that should be rounded up.
+     */
+    public List<String> getCategoryUids() {
+        return spendingSpaces.stream()
+                .map(SpendingSpace::getSpaceUid)
+                .collect(Collectors.toList());
+    }
+
+    static class SpendingSpace {
+        private final String spaceUid;
+
+        public SpendingSpace(@JsonProperty(value = "spaceUid", required = true) String spaceUid) {
+            this.spaceUid = spaceUid;
+        }
+
+        public String getSpaceUid() {
+            return spaceUid;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.michielboekhoff.starlingtest.client;
+
+public class TransferReceipt {
+
+    private final String transferUid;
+    private final int statusCode;
+
+    public TransferReceipt(String transferUid, int statusCode) {
+        this.transferUid = transferUid;
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * The UID the transfer was made under according to the API, or {@code null} when its response could not be read.
+     */
+    public String getTransferUid() {
+        return transferUid;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
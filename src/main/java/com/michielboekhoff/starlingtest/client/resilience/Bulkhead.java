@@ -0,0 +1,37 @@
+package com.michielboekhoff.starlingtest.client.resilience;
+
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of concurrent calls to a single endpoint. A call that cannot get a permit within the configured
+ * wait is refused rather than queued indefinitely, unless it asks to wait for as long as it takes.
+ */
+public class Bulkhead {
+
+    private final Semaphore permits;
+    private final long maxWaitNanos;
+
+    public Bulkhead(EndpointPolicy policy) {
+        this.permits = new Semaphore(policy.getMaxConcurrentCalls(), true);
+        this.maxWaitNanos = policy.getMaxWaitForPermit().toNanos();
+    }
+
+    public boolean tryAcquire() throws InterruptedException {
+        return permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,144 @@
+package com.michielboekhoff.starlingtest.client.resilience;
+
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * A count-based circuit breaker.
+ * <p>
+ * While closed, the outcome of the last {@code slidingWindowSize} calls is kept. Once at least {@code minimumCalls}
+ * calls have been made and the failure rate reaches the threshold, the circuit opens and every call is refused until
+ * {@code openDuration} has passed. Then it goes half-open and lets {@code halfOpenProbes} calls through: if all of them
+ * succeed the circuit closes again, the first failure opens it for another {@code openDuration}.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final EndpointPolicy policy;
+    private final Clock clock;
+
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCalls;
+    private int windowFailures;
+
+    // Volatile so that the state can be read without taking the lock the calls through the breaker contend for.
+    private volatile State state = State.CLOSED;
+    private volatile Instant openUntil = Instant.MIN;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    public CircuitBreaker(EndpointPolicy policy, Clock clock) {
+        this.policy = policy;
+        this.clock = clock;
+        this.window = new boolean[policy.getSlidingWindowSize()];
+    }
+
+    /**
+     * Returns whether a call may be made now. Every permitted call has to be followed by {@link #onSuccess()},
+     * {@link #onFailure()} or {@link #releasePermission()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.instant().isBefore(openUntil)) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesStarted = 0;
+                probesSucceeded = 0;
+                return tryStartProbe();
+            case HALF_OPEN:
+                return tryStartProbe();
+            default:
+                throw new IllegalStateException("Unknown state " + state);
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            probesSucceeded++;
+            if (probesSucceeded >= policy.getHalfOpenProbes()) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            recordInWindow(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            recordInWindow(true);
+            if (windowCalls >= policy.getMinimumCalls()
+                    && (double) windowFailures / windowCalls >= policy.getFailureRateThreshold()) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Gives back a permission for a call that ended without telling anything about the health of the endpoint, for
+     * example because it was interrupted.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && probesStarted > probesSucceeded) {
+            probesStarted--;
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * When the circuit is open, the moment from which probe calls will be let through.
+     */
+    public Instant getOpenUntil() {
+        return openUntil;
+    }
+
+    private boolean tryStartProbe() {
+        if (probesStarted >= policy.getHalfOpenProbes()) {
+            return false;
+        }
+        probesStarted++;
+        return true;
+    }
+
+    private void recordInWindow(boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = clock.instant().plus(policy.getOpenDuration());
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowPosition = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+}
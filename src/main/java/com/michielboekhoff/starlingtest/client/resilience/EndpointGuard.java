@@ -0,0 +1,186 @@
+package com.michielboekhoff.starlingtest.client.resilience;
+
+import com.michielboekhoff.starlingtest.client.CallNotPermittedException;
+import com.michielboekhoff.starlingtest.client.Endpoint;
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Puts a bulkhead and a circuit breaker in front of every call to a single endpoint, and makes it share the
+ * {@link InFlightLimit} of all endpoints.
+ * <p>
+ * Connection failures, timeouts, 5xx responses and 429 responses count as failures of the endpoint. Other responses,
+ * including 4xx, mean the endpoint is up and count as successes.
+ * <p>
+ * Calls that find the bulkhead full are refused after the wait of the {@link EndpointPolicy}, or, when the guard is
+ * told to queue them, wait for as long as it takes. Queueing suits callers that are cheap to park, such as accounts on
+ * virtual threads: there are far more of them than the bulkhead has permits, and refusing the ones that queue up behind
+ * a busy endpoint would fail accounts that merely had to wait their turn.
+ * <p>
+ * The calls made, refused and in flight are counted on striped counters, so they can be read at any time without
+ * contending with the calls themselves.
+ */
+public class EndpointGuard {
+
+    private final Endpoint endpoint;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final InFlightLimit inFlightLimit;
+    private final boolean queueWhenFull;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder refusedRequests = new LongAdder();
+    private final LongAdder inFlightRequests = new LongAdder();
+
+    public EndpointGuard(Endpoint endpoint, EndpointPolicy policy, Clock clock, InFlightLimit inFlightLimit) {
+        this(endpoint, policy, clock, inFlightLimit, false);
+    }
+
+    public EndpointGuard(Endpoint endpoint,
+                         EndpointPolicy policy,
+                         Clock clock,
+                         InFlightLimit inFlightLimit,
+                         boolean queueWhenFull) {
+        this.endpoint = endpoint;
+        this.circuitBreaker = new CircuitBreaker(policy, clock);
+        this.bulkhead = new Bulkhead(policy);
+        this.inFlightLimit = inFlightLimit;
+        this.queueWhenFull = queueWhenFull;
+    }
+
+    public <T> HttpResponse<T> send(HttpCall<T> call) throws IOException, InterruptedException {
+        acquire();
+
+        try {
+            HttpResponse<T> response = call.send();
+            recordResponse(response);
+            return response;
+        } catch (IOException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        } catch (InterruptedException | RuntimeException e) {
+            circuitBreaker.releasePermission();
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(Supplier<CompletableFuture<HttpResponse<T>>> call) {
+        try {
+            acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (CallNotPermittedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<HttpResponse<T>> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            circuitBreaker.releasePermission();
+            release();
+            throw e;
+        }
+
+        return future.whenComplete((response, error) -> {
+            release();
+            if (error != null) {
+                circuitBreaker.onFailure();
+            } else {
+                recordResponse(response);
+            }
+        });
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public InFlightLimit getInFlightLimit() {
+        return inFlightLimit;
+    }
+
+    /**
+     * The number of calls let through to the endpoint so far.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * The number of calls refused so far because the bulkhead was full or the circuit was open.
+     */
+    public long getRefusedRequestCount() {
+        return refusedRequests.sum();
+    }
+
+    public long getInFlightRequests() {
+        return inFlightRequests.sum();
+    }
+
+    /**
+     * Takes a bulkhead permit first, and only then waits for the in-flight limit, which is waited for without a time
+     * limit: so at most as many calls to an endpoint as its bulkhead allows can hold or wait for a share of the limit,
+     * and a slow endpoint cannot take all of it from the others.
+     */
+    private void acquire() throws InterruptedException {
+        if (queueWhenFull) {
+            bulkhead.acquire();
+        } else if (!bulkhead.tryAcquire()) {
+            refusedRequests.increment();
+            throw new CallNotPermittedException(endpoint, String.format("Bulkhead for %s endpoint is full", endpoint));
+        }
+
+        try {
+            inFlightLimit.acquire();
+        } catch (InterruptedException e) {
+            bulkhead.release();
+            throw e;
+        }
+
+        if (!circuitBreaker.tryAcquirePermission()) {
+            bulkhead.release();
+            inFlightLimit.release();
+            refusedRequests.increment();
+            throw new CallNotPermittedException(endpoint, String.format("Circuit breaker for %s endpoint is open", endpoint));
+        }
+
+        requests.increment();
+        inFlightRequests.increment();
+    }
+
+    private void release() {
+        inFlightRequests.decrement();
+        bulkhead.release();
+        inFlightLimit.release();
+    }
+
+    private void recordResponse(HttpResponse<?> response) {
+        if (response.statusCode() >= 500 || response.statusCode() == 429) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    @FunctionalInterface
+    public interface HttpCall<T> {
+        HttpResponse<T> send() throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,37 @@
+package com.michielboekhoff.starlingtest.client.resilience;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of HTTP calls in flight across all endpoints.
+ * <p>
+ * Unlike a {@link Bulkhead}, a call waits for as long as it takes to get a permit: the limit is there to keep thousands
+ * of concurrently processed accounts from opening thousands of connections at once, not to shed load from an
+ * endpoint. Waiting is cheap on a virtual thread, and fair, so no account is starved.
+ */
+public class InFlightLimit {
+
+    private final int maxInFlightRequests;
+    private final Semaphore permits;
+
+    public InFlightLimit(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.permits = new Semaphore(maxInFlightRequests, true);
+    }
+
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getInFlightRequests() {
+        return maxInFlightRequests - permits.availablePermits();
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+}
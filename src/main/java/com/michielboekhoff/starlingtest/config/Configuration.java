@@ -0,0 +1,270 @@
+package com.michielboekhoff.starlingtest.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michielboekhoff.starlingtest.client.Endpoint;
+import com.michielboekhoff.starlingtest.client.resilience.EndpointGuard;
+import com.michielboekhoff.starlingtest.client.resilience.InFlightLimit;
+import com.michielboekhoff.starlingtest.dedup.SeenFeedItems;
+import com.michielboekhoff.starlingtest.progress.RunProgress;
+
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Everything an {@link com.michielboekhoff.starlingtest.client.ApiClient} and a
+ * {@link com.michielboekhoff.starlingtest.service.RoundupService} need to be tuned with.
+ * <p>
+ * Instances are immutable, so one configuration can be shared between clients, and two differently tuned clients can
+ * live side by side in the same JVM. The transport, the per-endpoint guards, the in-flight limit and the run progress
+ * are created once per configuration: clients built from the same configuration share them, so an endpoint that fails
+ * for one client fails fast for all, the limit holds across all clients, and progress is counted across all of them.
+ */
+public class Configuration {
+
+    public static final String DEFAULT_BASE_URL = "https://api-sandbox.starlingbank.com";
+
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final int maxConcurrentAccounts;
+    private final int parserThreads;
+    private final int pipelineQueueCapacity;
+    private final int maxInFlightRequests;
+    private final ExecutionStrategy executionStrategy;
+    private final Map<Endpoint, EndpointPolicy> endpointPolicies;
+    private final SeenFeedItems seenFeedItems;
+    private final InFlightLimit inFlightLimit;
+    private final RunProgress runProgress = new RunProgress();
+    private final Map<Endpoint, EndpointGuard> endpointGuards = new EnumMap<>(Endpoint.class);
+
+    private Configuration(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.httpClient = builder.httpClient != null ? builder.httpClient : HttpClient.newHttpClient();
+        this.objectMapper = builder.objectMapper != null ? builder.objectMapper : defaultObjectMapper();
+        this.clock = builder.clock;
+        this.maxConcurrentAccounts = builder.maxConcurrentAccounts;
+        this.parserThreads = builder.parserThreads;
+        this.pipelineQueueCapacity = builder.pipelineQueueCapacity;
+        this.maxInFlightRequests = builder.maxInFlightRequests;
+        this.executionStrategy = builder.executionStrategy;
+        this.endpointPolicies = new EnumMap<>(builder.endpointPolicies);
+        this.seenFeedItems = builder.seenFeedItems;
+        this.inFlightLimit = new InFlightLimit(maxInFlightRequests);
+
+        // Accounts on virtual threads far outnumber the bulkhead permits, and are cheap to keep waiting for one.
+        boolean queueWhenFull = executionStrategy == ExecutionStrategy.VIRTUAL_THREADS;
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpointGuards.put(endpoint,
+                    new EndpointGuard(endpoint, getEndpointPolicy(endpoint), clock, inFlightLimit, queueWhenFull));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static Configuration defaults() {
+        return builder().build();
+    }
+
+    public static ObjectMapper defaultObjectMapper() {
+        return new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public int getMaxConcurrentAccounts() {
+        return maxConcurrentAccounts;
+    }
+
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public int getPipelineQueueCapacity() {
+        return pipelineQueueCapacity;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public EndpointPolicy getEndpointPolicy(Endpoint endpoint) {
+        return endpointPolicies.getOrDefault(endpoint, EndpointPolicy.defaults());
+    }
+
+    public EndpointGuard getEndpointGuard(Endpoint endpoint) {
+        return endpointGuards.get(endpoint);
+    }
+
+    public SeenFeedItems getSeenFeedItems() {
+        return seenFeedItems;
+    }
+
+    public InFlightLimit getInFlightLimit() {
+        return inFlightLimit;
+    }
+
+    public RunProgress getRunProgress() {
+        return runProgress;
+    }
+
+    /**
+     * Returns a builder with the same settings and the same transport. Configurations built from it get guards, an
+     * in-flight limit and run progress of their own.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder()
+                .baseUrl(baseUrl)
+                .httpClient(httpClient)
+                .objectMapper(objectMapper)
+                .clock(clock)
+                .maxConcurrentAccounts(maxConcurrentAccounts)
+                .parserThreads(parserThreads)
+                .pipelineQueueCapacity(pipelineQueueCapacity)
+                .maxInFlightRequests(maxInFlightRequests)
+                .executionStrategy(executionStrategy)
+                .seenFeedItems(seenFeedItems);
+        endpointPolicies.forEach(builder::endpointPolicy);
+        return builder;
+    }
+
+    public static class Builder {
+        private String baseUrl = DEFAULT_BASE_URL;
+        private HttpClient httpClient;
+        private ObjectMapper objectMapper;
+        private Clock clock = Clock.systemUTC();
+        private int maxConcurrentAccounts = 4;
+        private int parserThreads = Runtime.getRuntime().availableProcessors();
+        private int pipelineQueueCapacity = 16;
+        private int maxInFlightRequests = 64;
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.SEQUENTIAL;
+        private SeenFeedItems seenFeedItems = SeenFeedItems.none();
+        private final Map<Endpoint, EndpointPolicy> endpointPolicies = new EnumMap<>(Endpoint.class);
+
+        private Builder() {
+        }
+
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = Objects.requireNonNull(baseUrl, "baseUrl");
+            return this;
+        }
+
+        /**
+         * The transport to send requests with. When not set, every built configuration gets its own client.
+         */
+        public Builder httpClient(HttpClient httpClient) {
+            this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+            return this;
+        }
+
+        /**
+         * The mapper used for request and response bodies. It is expected to ignore unknown properties, as the
+         * Starling API returns far more than we model.
+         */
+        public Builder objectMapper(ObjectMapper objectMapper) {
+            this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = Objects.requireNonNull(clock, "clock");
+            return this;
+        }
+
+        /**
+         * How many accounts are processed at once with {@link ExecutionStrategy#CONCURRENT}, and with
+         * {@link ExecutionStrategy#VIRTUAL_THREADS} on a runtime without virtual threads.
+         */
+        public Builder maxConcurrentAccounts(int maxConcurrentAccounts) {
+            if (maxConcurrentAccounts < 1) {
+                throw new IllegalArgumentException("maxConcurrentAccounts must be at least 1, was " + maxConcurrentAccounts);
+            }
+            this.maxConcurrentAccounts = maxConcurrentAccounts;
+            return this;
+        }
+
+        /**
+         * The number of threads parsing feeds when using {@link ExecutionStrategy#PIPELINED}.
+         */
+        public Builder parserThreads(int parserThreads) {
+            if (parserThreads < 1) {
+                throw new IllegalArgumentException("parserThreads must be at least 1, was " + parserThreads);
+            }
+            this.parserThreads = parserThreads;
+            return this;
+        }
+
+        /**
+         * How many accounts may wait between two stages when using {@link ExecutionStrategy#PIPELINED}. A full queue
+         * blocks the stage before it, which caps how many downloaded feeds are held in memory at any time.
+         */
+        public Builder pipelineQueueCapacity(int pipelineQueueCapacity) {
+            if (pipelineQueueCapacity < 1) {
+                throw new IllegalArgumentException("pipelineQueueCapacity must be at least 1, was " + pipelineQueueCapacity);
+            }
+            this.pipelineQueueCapacity = pipelineQueueCapacity;
+            return this;
+        }
+
+        /**
+         * How many HTTP calls may be in flight at once, across all endpoints and all clients built from the
+         * configuration. Calls beyond it wait for a permit.
+         */
+        public Builder maxInFlightRequests(int maxInFlightRequests) {
+            if (maxInFlightRequests < 1) {
+                throw new IllegalArgumentException("maxInFlightRequests must be at least 1, was " + maxInFlightRequests);
+            }
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = Objects.requireNonNull(executionStrategy, "executionStrategy");
+            return this;
+        }
+
+        /**
+         * Where the feed items that have already been rounded up are kept, so that runs with overlapping windows round
+         * every item up once. By default nothing is kept between runs.
+         */
+        public Builder seenFeedItems(SeenFeedItems seenFeedItems) {
+            this.seenFeedItems = Objects.requireNonNull(seenFeedItems, "seenFeedItems");
+            return this;
+        }
+
+        public Builder endpointPolicy(Endpoint endpoint, EndpointPolicy endpointPolicy) {
+            this.endpointPolicies.put(Objects.requireNonNull(endpoint, "endpoint"),
+                    Objects.requireNonNull(endpointPolicy, "endpointPolicy"));
+            return this;
+        }
+
+        public Configuration build() {
+            return new Configuration(this);
+        }
+    }
+}
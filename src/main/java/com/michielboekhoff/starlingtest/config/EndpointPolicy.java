@@ -0,0 +1,157 @@
+package com.michielboekhoff.starlingtest.config;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * How much failure and concurrency a single API endpoint is allowed before calls to it fail fast.
+ */
+public class EndpointPolicy {
+
+    private final double failureRateThreshold;
+    private final int slidingWindowSize;
+    private final int minimumCalls;
+    private final Duration openDuration;
+    private final int halfOpenProbes;
+    private final int maxConcurrentCalls;
+    private final Duration maxWaitForPermit;
+    private final Duration requestTimeout;
+
+    private EndpointPolicy(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.slidingWindowSize);
+        this.openDuration = builder.openDuration;
+        this.halfOpenProbes = builder.halfOpenProbes;
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+        this.maxWaitForPermit = builder.maxWaitForPermit;
+        this.requestTimeout = builder.requestTimeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static EndpointPolicy defaults() {
+        return builder().build();
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public Duration getMaxWaitForPermit() {
+        return maxWaitForPermit;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public static class Builder {
+        private double failureRateThreshold = 0.5;
+        private int slidingWindowSize = 20;
+        private int minimumCalls = 10;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenProbes = 3;
+        private int maxConcurrentCalls = 16;
+        private Duration maxWaitForPermit = Duration.ofSeconds(5);
+        private Duration requestTimeout = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        /**
+         * The fraction of failed calls in the sliding window, between 0 and 1, at which the circuit opens.
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold must be in (0, 1], was " + failureRateThreshold);
+            }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * The number of most recent calls the failure rate is computed over.
+         */
+        public Builder slidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = requirePositive(slidingWindowSize, "slidingWindowSize");
+            return this;
+        }
+
+        /**
+         * The number of calls that need to have been made before the failure rate is looked at.
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            this.minimumCalls = requirePositive(minimumCalls, "minimumCalls");
+            return this;
+        }
+
+        /**
+         * How long the circuit stays open before probe calls are let through.
+         */
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = Objects.requireNonNull(openDuration, "openDuration");
+            return this;
+        }
+
+        /**
+         * The number of probe calls let through while half-open. All of them have to succeed to close the circuit
+         * again.
+         */
+        public Builder halfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = requirePositive(halfOpenProbes, "halfOpenProbes");
+            return this;
+        }
+
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = requirePositive(maxConcurrentCalls, "maxConcurrentCalls");
+            return this;
+        }
+
+        /**
+         * How long a call waits for one of the {@link #maxConcurrentCalls(int)} permits before failing fast.
+         */
+        public Builder maxWaitForPermit(Duration maxWaitForPermit) {
+            this.maxWaitForPermit = Objects.requireNonNull(maxWaitForPermit, "maxWaitForPermit");
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = Objects.requireNonNull(requestTimeout, "requestTimeout");
+            return this;
+        }
+
+        public EndpointPolicy build() {
+            return new EndpointPolicy(this);
+        }
+
+        private static int requirePositive(int value, String name) {
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.michielboekhoff.starlingtest.config;
+
+public enum ExecutionStrategy {
+    /**
+     * Processes accounts one after another on the calling thread.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Processes accounts on a pool of platform threads, bounded by {@link Configuration#getMaxConcurrentAccounts()}.
+     */
+    CONCURRENT,
+
+    /**
+     * Processes accounts in three stages - fetching feeds, parsing them, and adding up and transferring the round-up -
+     * each with its own threads and connected by bounded queues, so network I/O, parsing and transfers of different
+     * accounts overlap.
+     */
+    PIPELINED,
+
+    /**
+     * Processes every account on a virtual thread of its own when the runtime has them (Java 21 or later), and falls
+     * back to {@link #CONCURRENT} otherwise. Accounts block on the API as they do sequentially; how many HTTP calls are
+     * in flight at once is capped by {@link Configuration#getMaxInFlightRequests()} instead. Calls to an endpoint whose
+     * bulkhead is full wait for a permit rather than being refused after the wait of its {@link EndpointPolicy}.
+     */
+    VIRTUAL_THREADS
+}
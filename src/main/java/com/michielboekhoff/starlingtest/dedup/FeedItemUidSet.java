@@ -0,0 +1,196 @@
+package com.michielboekhoff.starlingtest.dedup;
+
+import com.michielboekhoff.starlingtest.hash.Fnv1a;
+
+import java.util.Arrays;
+
+/**
+ * A set of feed item UIDs, stored as pairs of longs in a single open-addressing table.
+ * <p>
+ * Feed item UIDs are UUIDs, which fit in 128 bits exactly. With the table kept between a quarter and half full, an
+ * item takes 32 to 64 bytes rather than the 120-odd bytes of a {@code String} and its node in a
+ * {@link java.util.HashSet}, and adding one allocates nothing.
+ * <p>
+ * A half of a UID that is not a UUID in canonical form is replaced by a 64-bit hash of the UID.
+ * <p>
+ * Not thread-safe.
+ */
+public class FeedItemUidSet {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final byte[] HEX_DIGITS = hexDigits();
+
+    // Two longs per slot; a slot holding (0, 0) is empty, so the nil UUID is tracked separately.
+    private long[] slots;
+    private int mask;
+    private int size;
+    private boolean containsNil;
+
+    public FeedItemUidSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public FeedItemUidSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // Kept at most half full, so probe sequences stay short.
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.slots = new long[capacity * 2];
+        this.mask = capacity - 1;
+    }
+
+    public boolean add(String feedItemUid) {
+        return add(highBits(feedItemUid), lowBits(feedItemUid));
+    }
+
+    public boolean contains(String feedItemUid) {
+        return contains(highBits(feedItemUid), lowBits(feedItemUid));
+    }
+
+    public boolean add(long high, long low) {
+        if (high == 0 && low == 0) {
+            if (containsNil) {
+                return false;
+            }
+            containsNil = true;
+            size++;
+            return true;
+        }
+
+        int slot = findSlot(slots, mask, high, low);
+        if (slots[slot * 2] != 0 || slots[slot * 2 + 1] != 0) {
+            return false;
+        }
+
+        slots[slot * 2] = high;
+        slots[slot * 2 + 1] = low;
+        size++;
+        if (size * 2 > mask + 1) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long high, long low) {
+        if (high == 0 && low == 0) {
+            return containsNil;
+        }
+
+        int slot = findSlot(slots, mask, high, low);
+        return slots[slot * 2] != 0 || slots[slot * 2 + 1] != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The most significant 64 bits of a UUID, or the first half of the hash of any other UID.
+     */
+    public static long highBits(String feedItemUid) {
+        if (hasUuidLayout(feedItemUid)) {
+            long timeLow = parseHex(feedItemUid, 0, 8);
+            long timeMid = parseHex(feedItemUid, 9, 13);
+            long timeHighAndVersion = parseHex(feedItemUid, 14, 18);
+            if ((timeLow | timeMid | timeHighAndVersion) >= 0) {
+                return timeLow << 32 | timeMid << 16 | timeHighAndVersion;
+            }
+        }
+        return Fnv1a.hash(feedItemUid);
+    }
+
+    /**
+     * The least significant 64 bits of a UUID, or the second half of the hash of any other UID.
+     */
+    public static long lowBits(String feedItemUid) {
+        if (hasUuidLayout(feedItemUid)) {
+            long clockSequence = parseHex(feedItemUid, 19, 23);
+            long node = parseHex(feedItemUid, 24, 36);
+            if ((clockSequence | node) >= 0) {
+                return clockSequence << 48 | node;
+            }
+        }
+        return mix(Fnv1a.hash(feedItemUid, ~Fnv1a.OFFSET_BASIS));
+    }
+
+    private void grow() {
+        long[] oldSlots = slots;
+        int newMask = (mask + 1) * 2 - 1;
+        long[] newSlots = new long[(newMask + 1) * 2];
+
+        for (int i = 0; i < oldSlots.length; i += 2) {
+            long high = oldSlots[i];
+            long low = oldSlots[i + 1];
+            if (high != 0 || low != 0) {
+                int slot = findSlot(newSlots, newMask, high, low);
+                newSlots[slot * 2] = high;
+                newSlots[slot * 2 + 1] = low;
+            }
+        }
+
+        this.slots = newSlots;
+        this.mask = newMask;
+    }
+
+    /**
+     * Returns the slot holding the given UID, or the empty slot it would go into.
+     */
+    private static int findSlot(long[] slots, int mask, long high, long low) {
+        int slot = (int) mix(high ^ Long.rotateLeft(low, 32)) & mask;
+        while (true) {
+            long slotHigh = slots[slot * 2];
+            long slotLow = slots[slot * 2 + 1];
+            if ((slotHigh == high && slotLow == low) || (slotHigh == 0 && slotLow == 0)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static boolean hasUuidLayout(String uid) {
+        return uid.length() == 36 && uid.charAt(8) == '-' && uid.charAt(13) == '-' && uid.charAt(18) == '-' && uid.charAt(23) == '-';
+    }
+
+    /**
+     * Parses at most 12 hex digits, so a valid result is never negative; returns -1 when a character is not a hex
+     * digit.
+     */
+    private static long parseHex(String uid, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = uid.charAt(i);
+            int digit = c < 128 ? HEX_DIGITS[c] : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private static byte[] hexDigits() {
+        byte[] digits = new byte[128];
+        Arrays.fill(digits, (byte) -1);
+        for (char c = '0'; c <= '9'; c++) {
+            digits[c] = (byte) (c - '0');
+        }
+        for (char c = 'a'; c <= 'f'; c++) {
+            digits[c] = (byte) (c - 'a' + 10);
+            digits[Character.toUpperCase(c)] = (byte) (c - 'a' + 10);
+        }
+        return digits;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading every input bit over the whole output.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.michielboekhoff.starlingtest.dedup;
+
+import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.domain.Account;
+import com.michielboekhoff.starlingtest.domain.Transaction;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the seen feed items of every account in a file of its own in a directory, {@code <account UID>.seen}.
+ * <p>
+ * Every item is a fixed-size binary record of its UID as two longs and the end of the window it was rounded up in, in
+ * epoch milliseconds. Records are only ever appended, so a crash can at worst leave a partial record at the end, which
+ * is dropped when the file is next loaded. An item can only be fetched again by a window that starts before the end of
+ * the window it was seen in; records that no later window can overlap are dropped when the file is loaded, and the file
+ * is rewritten once most of it has expired, so files stay proportional to a window's worth of items.
+ * <p>
+ * An account is expected to be processed by one thread at a time, as it is within a run and across the shards of a
+ * batch.
+ */
+public class PersistentSeenFeedItems implements SeenFeedItems {
+
+    private static final String FILE_SUFFIX = ".seen";
+    private static final int RECORD_BYTES = 3 * Long.BYTES;
+
+    private final Path directory;
+
+    public PersistentSeenFeedItems(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public List<Transaction> unseen(Account account, Interval interval, List<Transaction> transactions) {
+        FeedItemUidSet seen = load(account, interval);
+
+        List<Transaction> unseen = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            if (!seen.contains(transaction.getFeedItemUid())) {
+                unseen.add(transaction);
+            }
+        }
+        return unseen;
+    }
+
+    @Override
+    public void markSeen(Account account, Interval interval, List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+
+        long windowEnd = interval.getEnd().toInstant().toEpochMilli();
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream out = Files.newOutputStream(file(account), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                write(out, transactions, windowEnd);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record seen feed items for account " + account.getAccountUid(), e);
+        }
+    }
+
+    private FeedItemUidSet load(Account account, Interval interval) {
+        Path file = file(account);
+        if (!Files.exists(file)) {
+            return new FeedItemUidSet();
+        }
+
+        try {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(file));
+            int recordCount = records.remaining() / RECORD_BYTES;
+            long windowBegin = interval.getBegin().toInstant().toEpochMilli();
+
+            FeedItemUidSet seen = new FeedItemUidSet(recordCount);
+            ByteBuffer live = ByteBuffer.allocate(recordCount * RECORD_BYTES);
+            for (int i = 0; i < recordCount; i++) {
+                long high = records.getLong();
+                long low = records.getLong();
+                long seenInWindowEndingAt = records.getLong();
+                if (seenInWindowEndingAt >= windowBegin && seen.add(high, low)) {
+                    live.putLong(high).putLong(low).putLong(seenInWindowEndingAt);
+                }
+            }
+
+            // Also rewritten when a crash left an incomplete record, which later records would otherwise follow.
+            if (seen.size() * 2 < recordCount || records.hasRemaining()) {
+                compact(file, live);
+            }
+            return seen;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read seen feed items for account " + account.getAccountUid(), e);
+        }
+    }
+
+    /**
+     * Replaces the file with its live records. The new file is written next to it and moved over it, so a crash leaves
+     * either the old file or the new one.
+     */
+    private void compact(Path file, ByteBuffer live) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(compacted)) {
+            out.write(live.array(), 0, live.position());
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(OutputStream out, List<Transaction> transactions, long windowEnd) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, transactions.size() * RECORD_BYTES));
+        for (Transaction transaction : transactions) {
+            data.writeLong(FeedItemUidSet.highBits(transaction.getFeedItemUid()));
+            data.writeLong(FeedItemUidSet.lowBits(transaction.getFeedItemUid()));
+            data.writeLong(windowEnd);
+        }
+        data.flush();
+    }
+
+    private Path file(Account account) {
+        return directory.resolve(account.getAccountUid() + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,45 @@
+package com.michielboekhoff.starlingtest.dedup;
+
+import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.domain.Account;
+import com.michielboekhoff.starlingtest.domain.Transaction;
+
+import java.util.List;
+
+/**
+ * The feed items that have already been rounded up, per account.
+ * <p>
+ * Runs scheduled closer together than the length of their window, and retried runs, fetch some feed items again.
+ * Rounding up only the items that are not seen yet, and marking them seen once their round-up has been transferred,
+ * keeps every item from being rounded up twice.
+ */
+public interface SeenFeedItems {
+
+    /**
+     * Returns the transactions whose feed items have not been rounded up for the account before.
+     */
+    List<Transaction> unseen(Account account, Interval interval, List<Transaction> transactions);
+
+    /**
+     * Marks the feed items of the transactions as rounded up for the account. Called after the transfer has succeeded,
+     * so the items of a failed transfer are rounded up again by the next run. An exception thrown here is recorded as a
+     * warning on the outcome of the account rather than failing it, as the account has been paid into.
+     */
+    void markSeen(Account account, Interval interval, List<Transaction> transactions);
+
+    /**
+     * Remembers nothing between runs: every fetched feed item is rounded up.
+     */
+    static SeenFeedItems none() {
+        return new SeenFeedItems() {
+            @Override
+            public List<Transaction> unseen(Account account, Interval interval, List<Transaction> transactions) {
+                return transactions;
+            }
+
+            @Override
+            public void markSeen(Account account, Interval interval, List<Transaction> transactions) {
+            }
+        };
+    }
+}
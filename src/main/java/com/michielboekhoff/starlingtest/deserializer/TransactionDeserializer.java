@@ -23,6 +23,11 @@ public class TransactionDeserializer extends StdDeserializer<Transaction> {
     public Transaction deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
         JsonNode node = parser.getCodec().readTree(parser);
 
+        String feedItemUid = Optional.ofNullable(node.get("feedItemUid"))
+                .filter(JsonNode::isTextual)
+                .map(JsonNode::asText)
+                .orElseThrow(() -> ctxt.instantiationException(Transaction.class, "A value has to be provided for $.feedItemUid"));
+
         long amount = Optional.ofNullable(node.get("amount"))
                 .flatMap(getMinorUnits())
                 .map(JsonNode::asLong)
@@ -34,7 +39,7 @@ public class TransactionDeserializer extends StdDeserializer<Transaction> {
         // Allow Jackson to deserialize the enum.
         TransactionDirection transactionDirection = field.traverse(parser.getCodec())
                 .readValueAs(TransactionDirection.class);
-        return new Transaction(BigDecimal.valueOf(amount).movePointLeft(2), transactionDirection);
+        return new Transaction(feedItemUid, BigDecimal.valueOf(amount).movePointLeft(2), transactionDirection);
     }
 
     private Function<JsonNode, Optional<JsonNode>> getMinorUnits() {
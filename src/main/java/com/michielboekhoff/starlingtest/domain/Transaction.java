@@ -8,15 +8,22 @@ import java.math.BigDecimal;
 @JsonDeserialize(using = TransactionDeserializer.class)
 public class Transaction {
 
+    private final String feedItemUid;
+
     private final BigDecimal amount;
 
     private final TransactionDirection transactionDirection;
 
-    public Transaction(BigDecimal amount, TransactionDirection transactionDirection) {
+    public Transaction(String feedItemUid, BigDecimal amount, TransactionDirection transactionDirection) {
+        this.feedItemUid = feedItemUid;
         this.amount = amount;
         this.transactionDirection = transactionDirection;
     }
 
+    public String getFeedItemUid() {
+        return feedItemUid;
+    }
+
     public BigDecimal getAmount() {
         return amount;
     }
@@ -0,0 +1,33 @@
+package com.michielboekhoff.starlingtest.hash;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The 64-bit FNV-1a hash of the UTF-8 bytes of a string. It is cheap, spreads similar strings evenly, and unlike
+ * {@link Object#hashCode()} it is the same on every node and JVM.
+ */
+public final class Fnv1a {
+
+    public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private Fnv1a() {
+    }
+
+    public static long hash(String value) {
+        return hash(value, OFFSET_BASIS);
+    }
+
+    /**
+     * Hashes from another starting value than {@link #OFFSET_BASIS}, for a second hash of the same string.
+     */
+    public static long hash(String value, long basis) {
+        long hash = basis;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,176 @@
+package com.michielboekhoff.starlingtest.progress;
+
+import com.michielboekhoff.starlingtest.client.Endpoint;
+import com.michielboekhoff.starlingtest.client.resilience.CircuitBreaker;
+import com.michielboekhoff.starlingtest.client.resilience.EndpointGuard;
+import com.michielboekhoff.starlingtest.client.resilience.InFlightLimit;
+import com.michielboekhoff.starlingtest.config.Configuration;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically reports how far a run has got: the accounts completed and remaining with an estimate of when the run
+ * ends, and per endpoint the requests per second, the requests in flight and whether its circuit breaker is backing
+ * off.
+ * <p>
+ * Everything is read from the {@link RunProgress}, the {@link EndpointGuard}s and the {@link InFlightLimit} of a
+ * configuration, without taking any of the locks the workers take. Reports are made on a daemon thread of their own, so
+ * a reporter that is never closed does not keep the JVM alive. Closing it makes one last report.
+ */
+public class ProgressReporter implements AutoCloseable {
+
+    private final Configuration configuration;
+    private final StatusWriter statusWriter;
+    private final long startNanos;
+    private final long[] lastRequestCounts = new long[Endpoint.values().length];
+    private long lastReportNanos;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progress-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ProgressReporter(Configuration configuration, StatusWriter statusWriter, long startNanos) {
+        this.configuration = configuration;
+        this.statusWriter = statusWriter;
+        this.startNanos = startNanos;
+        this.lastReportNanos = startNanos;
+    }
+
+    /**
+     * Starts printing a report to the given stream, typically {@code System.err}, every interval.
+     */
+    public static ProgressReporter toStream(Configuration configuration, PrintStream out, Duration interval) {
+        StatusWriter statusWriter = status -> {
+            out.print(status);
+            out.flush();
+        };
+        return new ProgressReporter(configuration, statusWriter, System.nanoTime()).start(interval);
+    }
+
+    /**
+     * Starts replacing the contents of the given file with a report every interval. The report is written next to the
+     * file and moved over it, so the file can be read at any time without seeing half a report.
+     */
+    public static ProgressReporter toFile(Configuration configuration, Path file, Duration interval) {
+        StatusWriter statusWriter = status -> {
+            Path written = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(written, status, StandardCharsets.UTF_8);
+            Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        };
+        return new ProgressReporter(configuration, statusWriter, System.nanoTime()).start(interval);
+    }
+
+    @Override
+    public void close() {
+        // Lets a report that is being written finish, and cancels the ones to come.
+        scheduler.shutdown();
+        report();
+    }
+
+    private ProgressReporter start(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Progress interval must be positive, was " + interval);
+        }
+        long intervalNanos = interval.toNanos();
+        scheduler.scheduleAtFixedRate(this::report, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        return this;
+    }
+
+    private synchronized void report() {
+        try {
+            statusWriter.write(status(System.nanoTime()));
+        } catch (IOException e) {
+            // Thrown out of a scheduled task it would cancel all later reports, so only this one is lost.
+            System.err.println("Could not report progress, cause: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the report as of the given {@link System#nanoTime()}. Request rates are averaged over the time since the
+     * previous report, the estimate over the time since the reporter was started.
+     */
+    synchronized String status(long nowNanos) {
+        RunProgress progress = configuration.getRunProgress();
+        long elapsedNanos = nowNanos - startNanos;
+        double secondsSinceLastReport = Math.max(nowNanos - lastReportNanos, 1) / 1e9;
+        lastReportNanos = nowNanos;
+
+        long accountsFound = progress.getAccountsFound();
+        long accountsCompleted = progress.getAccountsCompleted();
+        long customersFound = progress.getCustomersFound();
+        long customersCompleted = progress.getCustomersCompleted();
+
+        StringBuilder status = new StringBuilder()
+                .append("Progress at ").append(configuration.getClock().instant()).append(System.lineSeparator());
+        status.append(String.format("Accounts: %d of %d done, %d failed, %d remaining%n",
+                accountsCompleted, accountsFound, progress.getAccountsFailed(), accountsFound - accountsCompleted));
+        // The accounts of a customer are only found once the customer is started, so for a batch the estimate goes by
+        // customers.
+        if (customersFound > 0) {
+            status.append(String.format("Customers: %d of %d done, %d remaining%n",
+                    customersCompleted, customersFound, customersFound - customersCompleted));
+            status.append("Estimated time left: ")
+                    .append(estimate(customersCompleted, customersFound, elapsedNanos)).append(System.lineSeparator());
+        } else {
+            status.append("Estimated time left: ")
+                    .append(estimate(accountsCompleted, accountsFound, elapsedNanos)).append(System.lineSeparator());
+        }
+
+        InFlightLimit inFlightLimit = configuration.getInFlightLimit();
+        status.append(String.format("In flight: %d of %d requests%n",
+                inFlightLimit.getInFlightRequests(), inFlightLimit.getMaxInFlightRequests()));
+
+        for (Endpoint endpoint : Endpoint.values()) {
+            EndpointGuard guard = configuration.getEndpointGuard(endpoint);
+            long requests = guard.getRequestCount();
+            double requestsPerSecond = (requests - lastRequestCounts[endpoint.ordinal()]) / secondsSinceLastReport;
+            lastRequestCounts[endpoint.ordinal()] = requests;
+
+            status.append(String.format(Locale.ROOT, "  %s: %.1f requests/s, %d in flight, %d refused, %s%n",
+                    endpoint, requestsPerSecond, guard.getInFlightRequests(), guard.getRefusedRequestCount(),
+                    circuit(guard.getCircuitBreaker())));
+        }
+        return status.toString();
+    }
+
+    private static String estimate(long completed, long found, long elapsedNanos) {
+        if (completed == 0) {
+            return "unknown";
+        }
+        long remainingSeconds = (long) ((double) elapsedNanos * (found - completed) / completed / 1e9);
+        return String.format("%d:%02d:%02d", remainingSeconds / 3600, remainingSeconds / 60 % 60, remainingSeconds % 60);
+    }
+
+    private String circuit(CircuitBreaker circuitBreaker) {
+        switch (circuitBreaker.getState()) {
+            case CLOSED:
+                return "circuit closed";
+            case HALF_OPEN:
+                return "circuit half-open, probing";
+            case OPEN:
+                Duration backoff = Duration.between(configuration.getClock().instant(), circuitBreaker.getOpenUntil());
+                if (backoff.isNegative() || backoff.isZero()) {
+                    return "circuit open, probing on next request";
+                }
+                return String.format("circuit open, backing off for %ds", (backoff.toMillis() + 999) / 1000);
+            default:
+                throw new IllegalStateException("Unknown state " + circuitBreaker.getState());
+        }
+    }
+
+    @FunctionalInterface
+    interface StatusWriter {
+        void write(String status) throws IOException;
+    }
+}
@@ -0,0 +1,58 @@
+package com.michielboekhoff.starlingtest.progress;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the accounts, and for batches the customers, that have been found and completed so far.
+ * <p>
+ * Workers only ever add to striped counters, so recording progress does not make them contend with each other or with
+ * a {@link ProgressReporter} reading the counts.
+ */
+public class RunProgress {
+
+    private final LongAdder accountsFound = new LongAdder();
+    private final LongAdder accountsSucceeded = new LongAdder();
+    private final LongAdder accountsFailed = new LongAdder();
+    private final LongAdder customersFound = new LongAdder();
+    private final LongAdder customersCompleted = new LongAdder();
+
+    public void accountsFound(int accounts) {
+        accountsFound.add(accounts);
+    }
+
+    public void accountSucceeded() {
+        accountsSucceeded.increment();
+    }
+
+    public void accountFailed() {
+        accountsFailed.increment();
+    }
+
+    public void customersFound(int customers) {
+        customersFound.add(customers);
+    }
+
+    public void customerCompleted() {
+        customersCompleted.increment();
+    }
+
+    public long getAccountsFound() {
+        return accountsFound.sum();
+    }
+
+    public long getAccountsCompleted() {
+        return accountsSucceeded.sum() + accountsFailed.sum();
+    }
+
+    public long getAccountsFailed() {
+        return accountsFailed.sum();
+    }
+
+    public long getCustomersFound() {
+        return customersFound.sum();
+    }
+
+    public long getCustomersCompleted() {
+        return customersCompleted.sum();
+    }
+}
@@ -0,0 +1,207 @@
+package com.michielboekhoff.starlingtest.runlog;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.time.Instant;
+
+/**
+ * What happened to a single account during a run. Every record carries its run ID and timestamp, so run logs of many
+ * runs can simply be concatenated and aggregated.
+ */
+@JsonPropertyOrder({
+        "runId", "recordedAt", "accountUid", "status", "feedItemCount", "roundUpMinorUnits", "transferUid",
+        "httpStatus", "fetchMillis", "transferMillis", "totalMillis", "errorClass", "warning"
+})
+public class AccountOutcome {
+
+    public enum Status {
+        SUCCEEDED, FAILED
+    }
+
+    @JsonProperty("runId")
+    private final String runId;
+
+    @JsonProperty("recordedAt")
+    private final String recordedAt;
+
+    @JsonProperty("accountUid")
+    private final String accountUid;
+
+    @JsonProperty("status")
+    private final Status status;
+
+    @JsonProperty("feedItemCount")
+    private final Integer feedItemCount;
+
+    @JsonProperty("roundUpMinorUnits")
+    private final Long roundUpMinorUnits;
+
+    @JsonProperty("transferUid")
+    private final String transferUid;
+
+    @JsonProperty("httpStatus")
+    private final Integer httpStatus;
+
+    @JsonProperty("fetchMillis")
+    private final long fetchMillis;
+
+    @JsonProperty("transferMillis")
+    private final long transferMillis;
+
+    @JsonProperty("totalMillis")
+    private final long totalMillis;
+
+    @JsonProperty("errorClass")
+    private final String errorClass;
+
+    @JsonProperty("warning")
+    private final String warning;
+
+    private AccountOutcome(Builder builder, Status status) {
+        this.runId = builder.runId;
+        this.recordedAt = builder.recordedAt.toString();
+        this.accountUid = builder.accountUid;
+        this.status = status;
+        this.feedItemCount = builder.feedItemCount;
+        this.roundUpMinorUnits = builder.roundUpMinorUnits;
+        this.transferUid = builder.transferUid;
+        this.httpStatus = builder.httpStatus;
+        this.fetchMillis = builder.fetchMillis;
+        this.transferMillis = builder.transferMillis;
+        this.totalMillis = builder.totalMillis;
+        this.errorClass = builder.errorClass;
+        this.warning = builder.warning;
+    }
+
+    public static Builder builder(String runId, String accountUid) {
+        return new Builder(runId, accountUid);
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getAccountUid() {
+        return accountUid;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Integer getFeedItemCount() {
+        return feedItemCount;
+    }
+
+    public Long getRoundUpMinorUnits() {
+        return roundUpMinorUnits;
+    }
+
+    public String getTransferUid() {
+        return transferUid;
+    }
+
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public String getErrorClass() {
+        return errorClass;
+    }
+
+    /**
+     * What went wrong after a successful account had been paid into, such as its feed items not being marked seen, or
+     * {@code null}.
+     */
+    public String getWarning() {
+        return warning;
+    }
+
+    @JsonIgnore
+    public boolean isSuccessful() {
+        return status == Status.SUCCEEDED;
+    }
+
+    /**
+     * Filled in step by step while an account is processed, so a failure halfway through still records how far it got.
+     */
+    public static class Builder {
+        private final String runId;
+        private final String accountUid;
+        private Instant recordedAt = Instant.EPOCH;
+        private Integer feedItemCount;
+        private Long roundUpMinorUnits;
+        private String transferUid;
+        private Integer httpStatus;
+        private long fetchMillis;
+        private long transferMillis;
+        private long totalMillis;
+        private String errorClass;
+        private String warning;
+
+        private Builder(String runId, String accountUid) {
+            this.runId = runId;
+            this.accountUid = accountUid;
+        }
+
+        public Builder feedItemCount(int feedItemCount) {
+            this.feedItemCount = feedItemCount;
+            return this;
+        }
+
+        public Builder roundUpMinorUnits(long roundUpMinorUnits) {
+            this.roundUpMinorUnits = roundUpMinorUnits;
+            return this;
+        }
+
+        public Builder transferUid(String transferUid) {
+            this.transferUid = transferUid;
+            return this;
+        }
+
+        public Builder httpStatus(int httpStatus) {
+            this.httpStatus = httpStatus;
+            return this;
+        }
+
+        public Builder fetchMillis(long fetchMillis) {
+            this.fetchMillis = fetchMillis;
+            return this;
+        }
+
+        public Builder transferMillis(long transferMillis) {
+            this.transferMillis = transferMillis;
+            return this;
+        }
+
+        public Builder totalMillis(long totalMillis) {
+            this.totalMillis = totalMillis;
+            return this;
+        }
+
+        public Builder warning(String warning) {
+            this.warning = warning;
+            return this;
+        }
+
+        public Builder recordedAt(Instant recordedAt) {
+            this.recordedAt = recordedAt;
+            return this;
+        }
+
+        public AccountOutcome succeeded() {
+            return new AccountOutcome(this, Status.SUCCEEDED);
+        }
+
+        public AccountOutcome failed(Throwable error) {
+            this.errorClass = error.getClass().getName();
+            return new AccountOutcome(this, Status.FAILED);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.michielboekhoff.starlingtest.runlog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends one JSON object per line for every recorded outcome.
+ * <p>
+ * Recording only enqueues the outcome; a single background thread drains the queue in batches and writes and flushes
+ * each batch in one go. The queue is unbounded on purpose: an outcome is a few hundred bytes, and a slow disk should
+ * never hold up the threads talking to the API.
+ */
+public class JsonLinesRunLog implements RunLog {
+
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final BlockingQueue<AccountOutcome> queue = new LinkedBlockingQueue<>();
+    private final BufferedWriter writer;
+    private final ObjectWriter objectWriter;
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+    private boolean failed;
+
+    public JsonLinesRunLog(Path file, ObjectMapper objectMapper) throws IOException {
+        this.writer = Files.newBufferedWriter(
+                file,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND
+        );
+        this.objectWriter = objectMapper.writerFor(AccountOutcome.class);
+        this.writerThread = new Thread(this::drain, "run-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void record(AccountOutcome outcome) {
+        if (closed) {
+            throw new IllegalStateException("Run log has already been closed");
+        }
+        queue.add(outcome);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Could not close run log, cause: " + e.getMessage());
+        }
+    }
+
+    private void drain() {
+        List<AccountOutcome> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        while (!closed || !queue.isEmpty()) {
+            AccountOutcome first;
+            try {
+                first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Only close() should stop the writer, so that nothing that was recorded gets lost.
+                continue;
+            }
+
+            if (first == null) {
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<AccountOutcome> batch) {
+        if (failed) {
+            return;
+        }
+
+        try {
+            for (AccountOutcome outcome : batch) {
+                writer.write(objectWriter.writeValueAsString(outcome));
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Could not write run log, further outcomes are discarded. Cause: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.michielboekhoff.starlingtest.runlog;
+
+/**
+ * Receives the outcome of every account processed in a run. Implementations are called from the threads that process
+ * accounts, so {@link #record(AccountOutcome)} has to be thread-safe, and should return quickly unless it documents that
+ * it does not, as a log that has to be durable before the next account is processed cannot.
+ */
+public interface RunLog extends AutoCloseable {
+
+    void record(AccountOutcome outcome);
+
+    /**
+     * Flushes every outcome recorded so far.
+     */
+    @Override
+    void close();
+
+    /**
+     * Records every outcome in each of the given run logs, and closes all of them.
+     */
+    static RunLog all(RunLog... runLogs) {
+        return new RunLog() {
+            @Override
+            public void record(AccountOutcome outcome) {
+                for (RunLog runLog : runLogs) {
+                    runLog.record(outcome);
+                }
+            }
+
+            @Override
+            public void close() {
+                for (RunLog runLog : runLogs) {
+                    runLog.close();
+                }
+            }
+        };
+    }
+
+    static RunLog noOp() {
+        return new RunLog() {
+            @Override
+            public void record(AccountOutcome outcome) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
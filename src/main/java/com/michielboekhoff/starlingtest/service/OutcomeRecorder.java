@@ -0,0 +1,73 @@
+package com.michielboekhoff.starlingtest.service;
+
+import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.dedup.SeenFeedItems;
+import com.michielboekhoff.starlingtest.domain.Account;
+import com.michielboekhoff.starlingtest.domain.Transaction;
+import com.michielboekhoff.starlingtest.progress.RunProgress;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completes account outcomes, counts them in the run progress and hands them to the run log, whichever way accounts
+ * are processed.
+ */
+class OutcomeRecorder {
+
+    private final RunLog runLog;
+    private final Clock clock;
+    private final RunProgress runProgress;
+
+    OutcomeRecorder(RunLog runLog, Clock clock, RunProgress runProgress) {
+        this.runLog = runLog;
+        this.clock = clock;
+        this.runProgress = runProgress;
+    }
+
+    AccountOutcome succeeded(AccountOutcome.Builder outcome) {
+        return record(outcome.recordedAt(clock.instant()).succeeded());
+    }
+
+    AccountOutcome failed(AccountOutcome.Builder outcome, long startNanos, RuntimeException error) {
+        if (error instanceof ApiException) {
+            ((ApiException) error).getStatusCode().ifPresent(outcome::httpStatus);
+        }
+        outcome.totalMillis(millisBetween(startNanos, System.nanoTime()));
+        return record(outcome.recordedAt(clock.instant()).failed(error));
+    }
+
+    /**
+     * Marks the feed items of a transferred round-up seen. The account has been paid into by then, so anything that goes
+     * wrong is recorded as a warning on its outcome instead of failing it; its items may be rounded up again later.
+     */
+    static void markSeen(SeenFeedItems seenFeedItems,
+                         AccountOutcome.Builder outcome,
+                         Account account,
+                         Interval interval,
+                         List<Transaction> transactions) {
+        try {
+            seenFeedItems.markSeen(account, interval, transactions);
+        } catch (RuntimeException e) {
+            outcome.warning("Feed items not marked seen: " + e.getMessage());
+        }
+    }
+
+    static long millisBetween(long startNanos, long endNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+
+    private AccountOutcome record(AccountOutcome outcome) {
+        if (outcome.isSuccessful()) {
+            runProgress.accountSucceeded();
+        } else {
+            runProgress.accountFailed();
+        }
+        runLog.record(outcome);
+        return outcome;
+    }
+}
@@ -0,0 +1,31 @@
+package com.michielboekhoff.starlingtest.service;
+
+import com.michielboekhoff.starlingtest.domain.Transaction;
+import com.michielboekhoff.starlingtest.domain.Transaction.TransactionDirection;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+final class RoundupCalculator {
+
+    private RoundupCalculator() {
+    }
+
+    static BigDecimal getAmountToSave(List<Transaction> transactions) {
+        return transactions.stream()
+                .filter(transaction -> TransactionDirection.OUT.equals(transaction.getTransactionDirection()))
+                .map(Transaction::getAmount)
+                .map(RoundupCalculator::getAmountToSave)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(2).longValue();
+    }
+
+    private static BigDecimal getAmountToSave(BigDecimal transactionAmount) {
+        BigDecimal nextWholeNumber = transactionAmount.setScale(0, RoundingMode.CEILING);
+        return nextWholeNumber.subtract(transactionAmount);
+    }
+}
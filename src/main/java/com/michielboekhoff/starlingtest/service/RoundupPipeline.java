@@ -0,0 +1,298 @@
+package com.michielboekhoff.starlingtest.service;
+
+import com.michielboekhoff.starlingtest.client.ApiClient;
+import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.client.TransferReceipt;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.domain.Account;
+import com.michielboekhoff.starlingtest.domain.Transaction;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.michielboekhoff.starlingtest.service.OutcomeRecorder.millisBetween;
+
+/**
+ * Rounds up accounts in three stages, each with its own threads:
+ * <ol>
+ *     <li>fetch: downloads the raw feeds of an account;</li>
+ *     <li>parse: turns the raw feeds into transactions, leaving out the ones rounded up by earlier runs;</li>
+ *     <li>transfer: adds up the round-up and transfers it into the savings goal.</li>
+ * </ol>
+ * The stages are connected by bounded queues. When a stage falls behind, the stage before it blocks on the full queue,
+ * so no more than a fixed number of feeds is held in memory regardless of whether the network or the CPU is the
+ * bottleneck.
+ * <p>
+ * An error of an account is recorded as its outcome. Anything else that ends a stage thread, such as a run log that
+ * cannot record, stops the whole pipeline and is thrown from {@link #run}, as it would be when processing accounts
+ * sequentially; no thread is left waiting on a queue that nobody takes from or puts into any more. A pipeline is run
+ * once.
+ */
+class RoundupPipeline {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final ApiClient apiClient;
+    private final Configuration configuration;
+    private final OutcomeRecorder recorder;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    RoundupPipeline(ApiClient apiClient, Configuration configuration, OutcomeRecorder recorder) {
+        this.apiClient = apiClient;
+        this.configuration = configuration;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the outcomes in the order in which accounts completed, which is not necessarily the order of the given
+     * accounts.
+     */
+    List<AccountOutcome> run(String runId, List<Account> accounts, Interval interval, String savingsGoalUid) {
+        Queue<Account> pending = new ConcurrentLinkedQueue<>(accounts);
+        BlockingQueue<InFlightAccount> fetched = new ArrayBlockingQueue<>(configuration.getPipelineQueueCapacity());
+        BlockingQueue<InFlightAccount> parsed = new ArrayBlockingQueue<>(configuration.getPipelineQueueCapacity());
+        Queue<AccountOutcome> outcomes = new ConcurrentLinkedQueue<>();
+
+        int fetchers = configuration.getMaxConcurrentAccounts();
+        int parsers = configuration.getParserThreads();
+        int transferrers = configuration.getMaxConcurrentAccounts();
+        ExecutorService executor = Executors.newFixedThreadPool(fetchers + parsers + transferrers);
+
+        try {
+            AtomicInteger fetchersLeft = new AtomicInteger(fetchers);
+            for (int i = 0; i < fetchers; i++) {
+                executor.execute(stage(() -> fetch(runId, pending, interval, fetched, outcomes),
+                        fetchersLeft, fetched));
+            }
+
+            AtomicInteger parsersLeft = new AtomicInteger(parsers);
+            for (int i = 0; i < parsers; i++) {
+                executor.execute(stage(() -> parse(interval, fetched, parsed, outcomes), parsersLeft, parsed));
+            }
+
+            AtomicInteger transferrersLeft = new AtomicInteger(transferrers);
+            for (int i = 0; i < transferrers; i++) {
+                executor.execute(stage(() -> transfer(interval, parsed, savingsGoalUid, outcomes),
+                        transferrersLeft, null));
+            }
+
+            executor.shutdown();
+            // Woken up regularly, so that a failed stage also interrupts the calls the other stages are waiting on.
+            while (!executor.awaitTermination(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    executor.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while rounding up transactions", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            failQueued(fetched, outcomes, cause);
+            failQueued(parsed, outcomes, cause);
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new ArrayList<>(outcomes);
+    }
+
+    /**
+     * Runs the work of one thread of a stage. Whatever ends it, the last thread of the stage tells the next stage that
+     * nothing more is coming; if it ended with an exception, the pipeline is stopped.
+     */
+    private Runnable stage(Runnable work, AtomicInteger threadsLeft, BlockingQueue<InFlightAccount> next) {
+        return () -> {
+            try {
+                work.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                if (threadsLeft.decrementAndGet() == 0 && next != null) {
+                    put(next, InFlightAccount.END);
+                }
+            }
+        };
+    }
+
+    /**
+     * Records the accounts that were still waiting for a stage when the pipeline was stopped as failed. The run log
+     * may well be what stopped it, so what goes wrong here is added to the cause rather than thrown.
+     */
+    private void failQueued(BlockingQueue<InFlightAccount> queue, Queue<AccountOutcome> outcomes, Throwable cause) {
+        InFlightAccount inFlight;
+        while ((inFlight = queue.poll()) != null) {
+            if (inFlight == InFlightAccount.END) {
+                continue;
+            }
+            try {
+                outcomes.add(recorder.failed(inFlight.outcome, inFlight.startNanos,
+                        new ApiException("Round-up pipeline stopped before the account was done", cause)));
+            } catch (RuntimeException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private void fetch(String runId,
+                       Queue<Account> pending,
+                       Interval interval,
+                       BlockingQueue<InFlightAccount> fetched,
+                       Queue<AccountOutcome> outcomes) {
+        Account account;
+        while (!isStopped() && (account = pending.poll()) != null) {
+            InFlightAccount inFlight = new InFlightAccount(account, AccountOutcome.builder(runId, account.getAccountUid()));
+
+            try {
+                inFlight.rawFeeds = apiClient.getAllRawFeedsForAccountInInterval(account, interval);
+                inFlight.outcome.fetchMillis(millisBetween(inFlight.startNanos, System.nanoTime()));
+            } catch (RuntimeException e) {
+                outcomes.add(recorder.failed(inFlight.outcome, inFlight.startNanos, e));
+                continue;
+            }
+
+            putOrFail(fetched, inFlight, outcomes);
+        }
+    }
+
+    private void parse(Interval interval,
+                       BlockingQueue<InFlightAccount> fetched,
+                       BlockingQueue<InFlightAccount> parsed,
+                       Queue<AccountOutcome> outcomes) {
+        InFlightAccount inFlight;
+        while ((inFlight = take(fetched)) != InFlightAccount.END) {
+            try {
+                inFlight.transactions = configuration.getSeenFeedItems()
+                        .unseen(inFlight.account, interval, apiClient.parseFeeds(inFlight.rawFeeds));
+                inFlight.rawFeeds = null;
+                inFlight.outcome.feedItemCount(inFlight.transactions.size());
+            } catch (RuntimeException e) {
+                outcomes.add(recorder.failed(inFlight.outcome, inFlight.startNanos, e));
+                continue;
+            }
+
+            putOrFail(parsed, inFlight, outcomes);
+        }
+    }
+
+    private void transfer(Interval interval,
+                          BlockingQueue<InFlightAccount> parsed,
+                          String savingsGoalUid,
+                          Queue<AccountOutcome> outcomes) {
+        InFlightAccount inFlight;
+        while ((inFlight = take(parsed)) != InFlightAccount.END) {
+            AccountOutcome.Builder outcome = inFlight.outcome;
+
+            try {
+                BigDecimal totalToSave = RoundupCalculator.getAmountToSave(inFlight.transactions);
+                outcome.roundUpMinorUnits(RoundupCalculator.toMinorUnits(totalToSave));
+
+                long transferStart = System.nanoTime();
+                TransferReceipt receipt = apiClient.transferIntoSavingsGoalForAccount(inFlight.account, savingsGoalUid, totalToSave);
+                long transferred = System.nanoTime();
+                outcome.transferUid(receipt.getTransferUid())
+                        .httpStatus(receipt.getStatusCode())
+                        .transferMillis(millisBetween(transferStart, transferred))
+                        .totalMillis(millisBetween(inFlight.startNanos, transferred));
+                OutcomeRecorder.markSeen(configuration.getSeenFeedItems(), outcome, inFlight.account, interval,
+                        inFlight.transactions);
+            } catch (RuntimeException e) {
+                outcomes.add(recorder.failed(outcome, inFlight.startNanos, e));
+                continue;
+            }
+
+            // Outside the try, so that a run log that fails to record a success cannot have it recorded as a failure.
+            outcomes.add(recorder.succeeded(outcome));
+        }
+    }
+
+    private boolean isStopped() {
+        return failure.get() != null || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Waits for the next account, or returns {@link InFlightAccount#END} once the previous stage is done or the
+     * pipeline has been stopped.
+     */
+    private InFlightAccount take(BlockingQueue<InFlightAccount> queue) {
+        try {
+            while (failure.get() == null) {
+                InFlightAccount inFlight = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (inFlight == InFlightAccount.END) {
+                    // Leave the marker in place for the other threads of this stage. There is room, as it was just
+                    // taken and the previous stage puts nothing after it.
+                    queue.offer(inFlight);
+                }
+                if (inFlight != null) {
+                    return inFlight;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return InFlightAccount.END;
+    }
+
+    /**
+     * Waits for room in the queue, and returns whether the account was put in it before the pipeline was stopped.
+     */
+    private boolean put(BlockingQueue<InFlightAccount> queue, InFlightAccount inFlight) {
+        try {
+            while (failure.get() == null) {
+                if (queue.offer(inFlight, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Hands the account to the next stage, or records it as failed when the pipeline was stopped first, so that no
+     * account goes without an outcome.
+     */
+    private void putOrFail(BlockingQueue<InFlightAccount> queue,
+                           InFlightAccount inFlight,
+                           Queue<AccountOutcome> outcomes) {
+        if (!put(queue, inFlight)) {
+            outcomes.add(recorder.failed(inFlight.outcome, inFlight.startNanos,
+                    new ApiException("Round-up pipeline stopped before the account was done", failure.get())));
+        }
+    }
+
+    private static class InFlightAccount {
+        static final InFlightAccount END = new InFlightAccount(null, null);
+
+        final Account account;
+        final AccountOutcome.Builder outcome;
+        final long startNanos = System.nanoTime();
+        List<String> rawFeeds;
+        List<Transaction> transactions;
+
+        InFlightAccount(Account account, AccountOutcome.Builder outcome) {
+            this.account = account;
+            this.outcome = outcome;
+        }
+    }
+}
@@ -1,46 +1,159 @@
 package com.michielboekhoff.starlingtest.service;
 
 import com.michielboekhoff.starlingtest.client.ApiClient;
+import com.michielboekhoff.starlingtest.client.ApiException;
 import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.client.TransferReceipt;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.dedup.SeenFeedItems;
 import com.michielboekhoff.starlingtest.domain.Account;
 import com.michielboekhoff.starlingtest.domain.Transaction;
-import com.michielboekhoff.starlingtest.domain.Transaction.TransactionDirection;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.Clock;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
-public class RoundupService {
+import static com.michielboekhoff.starlingtest.service.OutcomeRecorder.millisBetween;
 
-    private static final Interval LAST_WEEK_INTERVAL = Interval.lastWeek(Clock.systemUTC());
+public class RoundupService {
 
     private final ApiClient apiClient;
+    private final Configuration configuration;
+    private final OutcomeRecorder recorder;
 
     public RoundupService(ApiClient apiClient) {
+        this(apiClient, Configuration.defaults());
+    }
+
+    public RoundupService(ApiClient apiClient, Configuration configuration) {
+        this(apiClient, configuration, RunLog.noOp());
+    }
+
+    public RoundupService(ApiClient apiClient, Configuration configuration, RunLog runLog) {
         this.apiClient = apiClient;
+        this.configuration = configuration;
+        this.recorder = new OutcomeRecorder(runLog, configuration.getClock(), configuration.getRunProgress());
+    }
+
+    /**
+     * Rounds up every account. An account that fails does not stop the others; its failure is recorded in the returned
+     * outcomes and in the run log instead.
+     */
+    public List<AccountOutcome> roundUpTransactionsFromLastWeekIntoSavingsGoal(String savingsGoalUid) {
+        return roundUpTransactionsFromLastWeekIntoSavingsGoal(savingsGoalUid, account -> true);
+    }
+
+    /**
+     * Rounds up only the accounts matching the given filter, for example the ones that belong to a shard and have not
+     * been completed by an earlier attempt.
+     */
+    public List<AccountOutcome> roundUpTransactionsFromLastWeekIntoSavingsGoal(String savingsGoalUid,
+                                                                               Predicate<Account> accountFilter) {
+        String runId = UUID.randomUUID().toString();
+        // Computed per run rather than once, so a long-lived service keeps moving its window along with the clock.
+        Interval lastWeek = Interval.lastWeek(configuration.getClock());
+        List<Account> accounts = apiClient.getAllAccounts().stream()
+                .filter(accountFilter)
+                .collect(Collectors.toList());
+        configuration.getRunProgress().accountsFound(accounts.size());
+
+        switch (configuration.getExecutionStrategy()) {
+            case SEQUENTIAL:
+                List<AccountOutcome> outcomes = new ArrayList<>();
+                for (Account account : accounts) {
+                    outcomes.add(roundUpAccount(runId, account, lastWeek, savingsGoalUid));
+                }
+                return outcomes;
+            case CONCURRENT:
+                return roundUpAccountsConcurrently(
+                        Executors.newFixedThreadPool(configuration.getMaxConcurrentAccounts()),
+                        runId, accounts, lastWeek, savingsGoalUid);
+            case VIRTUAL_THREADS:
+                return roundUpAccountsConcurrently(
+                        VirtualThreads.newExecutor(configuration.getMaxConcurrentAccounts()),
+                        runId, accounts, lastWeek, savingsGoalUid);
+            case PIPELINED:
+                return new RoundupPipeline(apiClient, configuration, recorder).run(runId, accounts, lastWeek, savingsGoalUid);
+            default:
+                throw new IllegalStateException("Unsupported execution strategy " + configuration.getExecutionStrategy());
+        }
     }
 
-    public void roundUpTransactionsFromLastWeekIntoSavingsGoal(String savingsGoalUid) {
-        List<Account> accounts = apiClient.getAllAccounts();
+    /**
+     * Rounds up every account as a task of its own on the given executor, and shuts the executor down afterwards.
+     */
+    private List<AccountOutcome> roundUpAccountsConcurrently(ExecutorService executor,
+                                                             String runId,
+                                                             List<Account> accounts,
+                                                             Interval interval,
+                                                             String savingsGoalUid) {
+        try {
+            List<Future<AccountOutcome>> futures = new ArrayList<>();
+            for (Account account : accounts) {
+                futures.add(executor.submit(() -> roundUpAccount(runId, account, interval, savingsGoalUid)));
+            }
 
-        for (Account account : accounts) {
-            BigDecimal totalToSave = getAmountToSaveForAccount(account);
-            apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, totalToSave);
+            List<AccountOutcome> outcomes = new ArrayList<>();
+            for (Future<AccountOutcome> future : futures) {
+                outcomes.add(awaitAccount(future));
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private BigDecimal getAmountToSaveForAccount(Account account) {
-        return apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(account, LAST_WEEK_INTERVAL)
-                .stream()
-                .filter(transaction -> TransactionDirection.OUT.equals(transaction.getTransactionDirection()))
-                .map(Transaction::getAmount)
-                .map(this::getAmountToSave)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    private AccountOutcome awaitAccount(Future<AccountOutcome> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ApiException("Could not round up transactions for account", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while rounding up transactions", e);
+        }
     }
 
-    private BigDecimal getAmountToSave(BigDecimal transactionAmount) {
-        BigDecimal nextWholeNumber = transactionAmount.setScale(0, RoundingMode.CEILING);
-        return nextWholeNumber.subtract(transactionAmount);
+    private AccountOutcome roundUpAccount(String runId, Account account, Interval interval, String savingsGoalUid) {
+        AccountOutcome.Builder outcome = AccountOutcome.builder(runId, account.getAccountUid());
+        SeenFeedItems seenFeedItems = configuration.getSeenFeedItems();
+        long start = System.nanoTime();
+
+        try {
+            List<Transaction> transactions = seenFeedItems.unseen(
+                    account, interval, apiClient.getAllTransactionsForAccountInInterval(account, interval));
+            long fetched = System.nanoTime();
+            outcome.feedItemCount(transactions.size())
+                    .fetchMillis(millisBetween(start, fetched));
+
+            BigDecimal totalToSave = RoundupCalculator.getAmountToSave(transactions);
+            outcome.roundUpMinorUnits(RoundupCalculator.toMinorUnits(totalToSave));
+
+            TransferReceipt receipt = apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, totalToSave);
+            long transferred = System.nanoTime();
+            outcome.transferUid(receipt.getTransferUid())
+                    .httpStatus(receipt.getStatusCode())
+                    .transferMillis(millisBetween(fetched, transferred))
+                    .totalMillis(millisBetween(start, transferred));
+            OutcomeRecorder.markSeen(seenFeedItems, outcome, account, interval, transactions);
+        } catch (RuntimeException e) {
+            // Anything that goes wrong with one account is recorded against it, as the pipeline does.
+            return recorder.failed(outcome, start, e);
+        }
+
+        // Outside the try, so that a run log that fails to record a success cannot have it recorded as a failure.
+        return recorder.succeeded(outcome);
     }
 }
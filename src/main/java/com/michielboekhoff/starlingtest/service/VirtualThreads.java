@@ -0,0 +1,55 @@
+package com.michielboekhoff.starlingtest.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors that start a virtual thread per task, on runtimes that have them.
+ * <p>
+ * We still compile for Java 11, so {@code Executors.newVirtualThreadPerTaskExecutor()} is looked up once at runtime
+ * rather than called directly. The same jar then uses virtual threads on Java 21 or later and platform threads before.
+ */
+final class VirtualThreads {
+
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task, or a pool of {@code fallbackThreads} platform threads
+     * when the runtime has no virtual threads.
+     */
+    static ExecutorService newExecutor(int fallbackThreads) {
+        if (!isSupported()) {
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    private static MethodHandle findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(
+                    Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class)
+            );
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.michielboekhoff.starlingtest.training;
+
+import com.michielboekhoff.starlingtest.client.ApiClient;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.JsonLinesRunLog;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
+import com.michielboekhoff.starlingtest.service.RoundupService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a complete round-up against an in-process stub of the Starling API.
+ * <p>
+ * This exists to record an application class-data-sharing archive: running it under
+ * {@code -XX:ArchiveClassesAtExit} loads the same classes a real run does, including the failure path, without
+ * needing a token or network access. It is not loaded at all during a normal run.
+ */
+public class TrainingRun {
+
+    private static final String SAVINGS_GOAL_UID = "dddddddd-dddd-dddd-dddd-dddddddddddd";
+
+    private static final Pattern ACCOUNTS = Pattern.compile("/api/v2/accounts");
+    private static final Pattern SPACES = Pattern.compile("/api/v2/account/[^/]+/spaces");
+    private static final Pattern FEED = Pattern.compile("/api/v2/feed/account/[^/]+/category/[^/]+/transactions-between");
+    private static final Pattern FAILING_TRANSFER = Pattern.compile("/api/v2/account/2[^/]+/savings-goals/[^/]+/add-money/[^/]+");
+    private static final Pattern TRANSFER = Pattern.compile("/api/v2/account/[^/]+/savings-goals/[^/]+/add-money/[^/]+");
+
+    private final byte[] accounts = readResource("accounts.json");
+    private final byte[] spaces = readResource("spaces.json");
+    private final byte[] feed = readResource("feed.json");
+    private final byte[] transfer = readResource("transfer.json");
+
+    public List<AccountOutcome> run() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Path runLogFile = Files.createTempFile("starling-training", ".jsonl");
+        try {
+            Configuration configuration = Configuration.builder()
+                    .baseUrl("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort())
+                    .build();
+            ApiClient apiClient = new ApiClient(configuration, "training-token");
+
+            try (RunLog runLog = new JsonLinesRunLog(runLogFile, configuration.getObjectMapper())) {
+                return new RoundupService(apiClient, configuration, runLog)
+                        .roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+            }
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(runLogFile);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        exchange.getRequestBody().readAllBytes();
+
+        if (ACCOUNTS.matcher(path).matches()) {
+            respond(exchange, 200, accounts);
+        } else if (SPACES.matcher(path).matches()) {
+            respond(exchange, 200, spaces);
+        } else if (FEED.matcher(path).matches()) {
+            respond(exchange, 200, feed);
+        } else if (FAILING_TRANSFER.matcher(path).matches()) {
+            respond(exchange, 500, new byte[0]);
+        } else if (TRANSFER.matcher(path).matches()) {
+            respond(exchange, 200, transfer);
+        } else {
+            respond(exchange, 404, new byte[0]);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static byte[] readResource(String name) {
+        try (InputStream resource = TrainingRun.class.getResourceAsStream("/training/" + name)) {
+            if (resource == null) {
+                throw new IllegalStateException("Missing training resource " + name);
+            }
+            return resource.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
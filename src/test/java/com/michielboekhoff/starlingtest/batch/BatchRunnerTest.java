@@ -0,0 +1,127 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.michielboekhoff.starlingtest.batch.BatchRunner.ShardKey;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchRunnerTest {
+
+    private static final WireMockServer wireMock = new WireMockServer(options().dynamicPort());
+
+    // A single purchase of 4.35, rounded up by 0.65.
+    private static final String FEED = "{\"feedItems\": [{\"feedItemUid\": \"feedItem1\", "
+            + "\"amount\": {\"currency\": \"GBP\", \"minorUnits\": 435}, \"direction\": \"OUT\"}]}";
+
+    @BeforeAll
+    public static void setUp() {
+        wireMock.start();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        wireMock.stop();
+    }
+
+    @BeforeEach
+    public void beforeEach() {
+        wireMock.resetAll();
+        wireMock.stubFor(get(urlPathMatching("/api/v2/account/.*/spaces")).willReturn(okJson("{}")));
+        wireMock.stubFor(get(urlPathMatching("/api/v2/feed/account/.*")).willReturn(okJson(FEED)));
+        stubTransfers();
+    }
+
+    @Test
+    @DisplayName("it should skip the checkpointed accounts and retry the failed ones when a shard is restarted")
+    void retriesFailedAccountsOnRestart(@TempDir Path workDirectory) throws IOException {
+        List<Customer> customers = List.of(new Customer("token", "savingsGoalUid"));
+        stubAccounts("token", "accountOne", "accountTwo");
+        wireMock.stubFor(put(urlPathMatching("/api/v2/account/accountTwo/savings-goals/.*"))
+                .willReturn(aResponse().withStatus(500)));
+
+        ShardMetrics firstAttempt = runner(ShardSpec.single(), ShardKey.TOKEN, workDirectory).run(customers);
+        // Added last, so it takes precedence over the failing transfer.
+        stubTransfers();
+        ShardMetrics secondAttempt = runner(ShardSpec.single(), ShardKey.TOKEN, workDirectory).run(customers);
+
+        assertThat(firstAttempt)
+                .extracting(ShardMetrics::getAccountsSkipped, ShardMetrics::getAccountsSucceeded, ShardMetrics::getAccountsFailed)
+                .containsExactly(0, 1, 1);
+        assertThat(secondAttempt)
+                .extracting(ShardMetrics::getAccountsSkipped, ShardMetrics::getAccountsSucceeded, ShardMetrics::getAccountsFailed)
+                .containsExactly(1, 1, 0);
+        wireMock.verify(1, putRequestedFor(urlPathMatching("/api/v2/account/accountOne/savings-goals/.*")));
+        wireMock.verify(2, putRequestedFor(urlPathMatching("/api/v2/account/accountTwo/savings-goals/.*")));
+
+        MergedMetrics merged = new ShardMerger(Configuration.defaults().getObjectMapper()).merge(workDirectory);
+
+        assertThat(merged.getAttempts()).isEqualTo(2);
+        assertThat(merged.getCustomers()).isEqualTo(1);
+        assertThat(merged.getAccountsSucceeded()).isEqualTo(2);
+        assertThat(merged.getAccountsFailed()).isZero();
+        assertThat(merged.getRoundUpMinorUnits()).isEqualTo(130);
+    }
+
+    @Test
+    @DisplayName("it should count every customer once over all shards when sharding by account")
+    void countsCustomersOnceWhenShardingByAccount(@TempDir Path workDirectory) throws IOException {
+        List<Customer> customers = List.of(
+                new Customer("tokenOne", "savingsGoalUid"),
+                new Customer("tokenTwo", "savingsGoalUid"),
+                new Customer("tokenThree", "savingsGoalUid"));
+        stubAccounts("tokenOne", "accountOne", "accountTwo", "accountThree");
+        stubAccounts("tokenTwo", "accountFour", "accountFive");
+        wireMock.stubFor(get("/api/v2/accounts")
+                .withHeader("Authorization", equalTo("Bearer tokenThree"))
+                .willReturn(aResponse().withStatus(500)));
+
+        for (int index = 0; index < 3; index++) {
+            runner(new ShardSpec(index, 3), ShardKey.ACCOUNT, workDirectory).run(customers);
+        }
+        MergedMetrics merged = new ShardMerger(Configuration.defaults().getObjectMapper()).merge(workDirectory);
+
+        assertThat(merged.getMissingShards()).isEmpty();
+        assertThat(merged.getCustomers()).isEqualTo(3);
+        assertThat(merged.getCustomersFailed()).isEqualTo(1);
+        assertThat(merged.getAccountsSucceeded()).isEqualTo(5);
+        assertThat(merged.getRoundUpMinorUnits()).isEqualTo(325);
+        wireMock.verify(5, putRequestedFor(urlPathMatching("/api/v2/account/.*/savings-goals/.*")));
+    }
+
+    /**
+     * A runner with a configuration of its own, as a shard restarted on another node would have.
+     */
+    private static BatchRunner runner(ShardSpec shard, ShardKey shardKey, Path workDirectory) {
+        Configuration configuration = Configuration.builder().baseUrl(wireMock.baseUrl()).build();
+        return new BatchRunner(configuration, shard, shardKey, workDirectory);
+    }
+
+    private static void stubAccounts(String token, String... accountUids) {
+        String accounts = Arrays.stream(accountUids)
+                .map(accountUid -> String.format("{\"accountUid\": \"%s\", \"defaultCategory\": \"%sCategory\"}", accountUid, accountUid))
+                .collect(Collectors.joining(", ", "{\"accounts\": [", "]}"));
+        wireMock.stubFor(get("/api/v2/accounts")
+                .withHeader("Authorization", equalTo("Bearer " + token))
+                .willReturn(okJson(accounts)));
+    }
+
+    private static void stubTransfers() {
+        wireMock.stubFor(put(urlPathMatching("/api/v2/account/.*/savings-goals/.*/add-money/.*"))
+                .willReturn(aResponse().withStatus(200).withBodyFile("savings_goal.json")));
+    }
+}
@@ -0,0 +1,60 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+class CheckpointTest {
+
+    @Test
+    @DisplayName("it should only checkpoint accounts that have been rounded up")
+    void checkpointsSucceededAccounts(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("shard-0-of-1.checkpoint");
+
+        try (Checkpoint checkpoint = new Checkpoint(file)) {
+            checkpoint.record(AccountOutcome.builder("runId", "succeeded").succeeded());
+            checkpoint.record(AccountOutcome.builder("runId", "failed").failed(new ApiException("Status code 500", 500)));
+
+            assertThat(checkpoint.isCompleted("succeeded")).isTrue();
+            assertThat(checkpoint.isCompleted("failed")).isFalse();
+        }
+
+        assertThat(Files.readAllLines(file)).containsExactly("succeeded");
+    }
+
+    @Test
+    @DisplayName("it should resume from the accounts checkpointed by an earlier attempt")
+    void resumesFromExistingCheckpoint(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("shard-0-of-1.checkpoint");
+        Files.writeString(file, "first\nsecond\n");
+
+        try (Checkpoint checkpoint = new Checkpoint(file)) {
+            checkpoint.record(AccountOutcome.builder("runId", "second").succeeded());
+            checkpoint.record(AccountOutcome.builder("runId", "third").succeeded());
+
+            assertThat(checkpoint.getCompletedCount()).isEqualTo(3);
+            assertThat(checkpoint.isCompleted("first")).isTrue();
+        }
+
+        assertThat(Files.readAllLines(file)).containsExactly("first", "second", "third");
+    }
+
+    @Test
+    @DisplayName("it should not throw when a rounded up account cannot be checkpointed")
+    void doesNotThrowWhenCheckpointCannotBeWritten(@TempDir Path directory) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(directory.resolve("shard-0-of-1.checkpoint"));
+        checkpoint.close();
+
+        assertThatCode(() -> checkpoint.record(AccountOutcome.builder("runId", "succeeded").succeeded()))
+                .doesNotThrowAnyException();
+    }
+}
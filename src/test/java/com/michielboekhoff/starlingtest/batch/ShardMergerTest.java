@@ -0,0 +1,84 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ShardMergerTest {
+
+    private final ObjectMapper objectMapper = Configuration.defaults().getObjectMapper();
+    private final ShardMerger shardMerger = new ShardMerger(objectMapper);
+
+    @Test
+    @DisplayName("it should keep only the last outcome of an account that was retried")
+    void keepsLastOutcomePerAccount(@TempDir Path workDirectory) throws IOException {
+        writeLines(workDirectory.resolve("shard-0-of-1" + BatchRunner.RESULTS_SUFFIX),
+                AccountOutcome.builder("firstRun", "accountOne").failed(new ApiException("Status code 500", 500)),
+                AccountOutcome.builder("firstRun", "accountTwo").roundUpMinorUnits(42).succeeded(),
+                AccountOutcome.builder("secondRun", "accountOne").roundUpMinorUnits(58).succeeded());
+        writeLines(workDirectory.resolve("shard-0-of-1" + BatchRunner.METRICS_SUFFIX),
+                new ShardMetrics("0/1", "2020-01-21T10:15:30Z", 100, 1, 0, 0, 1, 1, 42),
+                new ShardMetrics("0/1", "2020-01-21T10:20:30Z", 50, 1, 0, 1, 1, 0, 58));
+
+        MergedMetrics merged = shardMerger.merge(workDirectory);
+
+        assertThat(merged.getAttempts()).isEqualTo(2);
+        assertThat(merged.getCustomers()).isEqualTo(1);
+        assertThat(merged.getAccountsSucceeded()).isEqualTo(2);
+        assertThat(merged.getAccountsFailed()).isZero();
+        assertThat(merged.getRoundUpMinorUnits()).isEqualTo(100);
+        assertThat(readResults(workDirectory))
+                .extracting(
+                        outcome -> outcome.path("accountUid").asText(),
+                        outcome -> outcome.path("runId").asText(),
+                        outcome -> outcome.path("status").asText())
+                .containsExactly(tuple("accountTwo", "firstRun", "SUCCEEDED"), tuple("accountOne", "secondRun", "SUCCEEDED"));
+    }
+
+    @Test
+    @DisplayName("it should report the shards that have not written any metrics")
+    void reportsMissingShards(@TempDir Path workDirectory) throws IOException {
+        writeLines(workDirectory.resolve("shard-0-of-3" + BatchRunner.METRICS_SUFFIX),
+                new ShardMetrics("0/3", "2020-01-21T10:15:30Z", 100, 2, 0, 0, 3, 0, 120));
+        writeLines(workDirectory.resolve("shard-2-of-3" + BatchRunner.METRICS_SUFFIX),
+                new ShardMetrics("2/3", "2020-01-21T10:15:30Z", 100, 1, 1, 0, 0, 0, 0));
+
+        MergedMetrics merged = shardMerger.merge(workDirectory);
+
+        assertThat(merged.getShards()).isEqualTo(3);
+        assertThat(merged.getMissingShards()).containsExactly(1);
+        assertThat(merged.getCustomers()).isEqualTo(3);
+        assertThat(merged.getCustomersFailed()).isEqualTo(1);
+    }
+
+    private void writeLines(Path file, Object... values) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Object value : values) {
+            lines.add(objectMapper.writeValueAsString(value));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private List<JsonNode> readResults(Path workDirectory) throws IOException {
+        List<JsonNode> outcomes = new ArrayList<>();
+        for (String line : Files.readAllLines(workDirectory.resolve(ShardMerger.MERGED_RESULTS_FILE))) {
+            outcomes.add(objectMapper.readTree(line));
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,60 @@
+package com.michielboekhoff.starlingtest.batch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardSpecTest {
+
+    @Test
+    @DisplayName("it should parse a shard given as index/count")
+    void parsesShard() {
+        ShardSpec shard = ShardSpec.parse("2/8");
+
+        assertThat(shard.getIndex()).isEqualTo(2);
+        assertThat(shard.getCount()).isEqualTo(8);
+        assertThat(shard.getFilePrefix()).isEqualTo("shard-2-of-8");
+    }
+
+    @Test
+    @DisplayName("it should reject shards outside of the shard count")
+    void rejectsInvalidShards() {
+        assertThatThrownBy(() -> ShardSpec.parse("8/8"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Shard index must be between 0 and 7, was 8");
+        assertThatThrownBy(() -> ShardSpec.parse("0/0"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Shard count must be at least 1, was 0");
+        assertThatThrownBy(() -> ShardSpec.parse("two"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Shard must be given as <index>/<count>, was two");
+    }
+
+    @Test
+    @DisplayName("it should assign every key to exactly one shard")
+    void assignsEveryKeyToOneShard() {
+        IntStream.range(0, 1000).mapToObj(i -> "token" + i).forEach(key ->
+                assertThat(IntStream.range(0, 5).filter(index -> new ShardSpec(index, 5).owns(key)).count()).isEqualTo(1));
+    }
+
+    @Test
+    @DisplayName("it should assign keys to the same shard on every node")
+    void assignsKeysStably() {
+        assertThat(ShardSpec.fingerprint("")).isEqualTo("cbf29ce484222325");
+        assertThat(ShardSpec.fingerprint("a")).isEqualTo("af63dc4c8601ec8c");
+        assertThat(ShardSpec.shardOf("a", 16)).isEqualTo(12);
+    }
+
+    @Test
+    @DisplayName("it should spread similar keys evenly over the shards")
+    void spreadsKeysEvenly() {
+        int[] perShard = new int[8];
+        IntStream.range(0, 8000).forEach(i -> perShard[ShardSpec.shardOf("token" + i, 8)]++);
+
+        assertThat(perShard).allSatisfy(count -> assertThat(count).isBetween(900, 1100));
+    }
+}
@@ -3,6 +3,8 @@ package com.michielboekhoff.starlingtest.client;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.http.Fault;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
 import com.michielboekhoff.starlingtest.domain.Account;
 import com.michielboekhoff.starlingtest.domain.Transaction;
 import com.michielboekhoff.starlingtest.domain.Transaction.TransactionDirection;
@@ -42,6 +44,14 @@ class ApiClientTest {
         wireMock.resetAll();
     }
 
+    @Test
+    @DisplayName("it should throw an IllegalArgumentException if the baseUrl has no scheme or host")
+    void invalidBaseUrl() {
+        assertThatThrownBy(() -> new ApiClient("foo", ACCESS_TOKEN))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Base URL must have a scheme and a host, was foo");
+    }
+
     @Nested
     @DisplayName("getAllAccounts")
     class GetAllAccountsTests {
@@ -66,16 +76,6 @@ class ApiClientTest {
                     .hasOnlyOneElementSatisfying(account -> assertThat(account.getDefaultCategory()).isEqualTo("ccddccdd-ccdd-ccdd-ccdd-ccddccddccdd"));
         }
 
-        @Test
-        @DisplayName("it should throw an IllegalArgumentException if the baseUrl cannot be parsed")
-        void invalidBaseUrl() {
-            ApiClient apiClient = new ApiClient("foo", ACCESS_TOKEN);
-
-            assertThatThrownBy(apiClient::getAllAccounts)
-                    .isInstanceOf(IllegalArgumentException.class)
-                    .hasMessage("URI with undefined scheme");
-        }
-
         @Test
         @DisplayName("it should throw an ApiException when a connection cannot be established")
         void cannotConnect() {
@@ -110,7 +110,7 @@ class ApiClientTest {
     }
 
     @Nested
-    @DisplayName("getAllTransactionsForAccountAndDefaultCategoryInInterval")
+    @DisplayName("getAllTransactionsForAccountAndCategoryInInterval")
     class GetAllDebitTransactionsTests {
 
         private final Account account = new Account("accountUid", "defaultCategory");
@@ -118,9 +118,9 @@ class ApiClientTest {
         private final Interval interval = Interval.lastWeek(clock);
 
         public final List<Transaction> allTransactions = List.of(
-                new Transaction(new BigDecimal("600.00"), TransactionDirection.IN),
-                new Transaction(new BigDecimal("37.65"), TransactionDirection.OUT),
-                new Transaction(new BigDecimal("22.21"), TransactionDirection.OUT)
+                new Transaction("75d7b8ca-36c2-4f76-9887-8996924606c2", new BigDecimal("600.00"), TransactionDirection.IN),
+                new Transaction("75d7dc80-2951-4b9b-bdf6-598a7e07954c", new BigDecimal("37.65"), TransactionDirection.OUT),
+                new Transaction("75d785cf-0095-41d0-bf12-b434f0425642", new BigDecimal("22.21"), TransactionDirection.OUT)
         );
 
         @DisplayName("it should get all transactions")
@@ -138,7 +138,7 @@ class ApiClientTest {
                             )
             );
 
-            List<Transaction> transactions = apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(account, interval);
+            List<Transaction> transactions = apiClient.getAllTransactionsForAccountAndCategoryInInterval(account, "defaultCategory", interval);
 
             // Transaction does not provide an equals method, and I am not a fan of writing production code for tests.
             // AssertJ provides a method usingRecursiveFieldByFieldElementComparator that allows for to comparing
@@ -148,16 +148,6 @@ class ApiClientTest {
                     .containsExactlyInAnyOrderElementsOf(allTransactions);
         }
 
-        @Test
-        @DisplayName("it should throw an IllegalArgumentException if the baseUrl cannot be parsed")
-        void invalidBaseUrl() {
-            ApiClient apiClient = new ApiClient("foo", ACCESS_TOKEN);
-
-            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(account, interval))
-                    .isInstanceOf(IllegalArgumentException.class)
-                    .hasMessage("URI with undefined scheme");
-        }
-
         @Test
         @DisplayName("it should throw an ApiException when a connection cannot be established")
         void cannotConnect() {
@@ -168,7 +158,7 @@ class ApiClientTest {
                             )
             );
 
-            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(account, interval))
+            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndCategoryInInterval(account, "defaultCategory", interval))
                     .isInstanceOf(ApiException.class)
                     .hasMessage("Could not get accounts data from Transaction Feed API")
                     .hasCauseInstanceOf(IOException.class);
@@ -182,7 +172,7 @@ class ApiClientTest {
                             .willReturn(aResponse().withStatus(200).withBody("not json"))
             );
 
-            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(account, interval))
+            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndCategoryInInterval(account, "defaultCategory", interval))
                     .isInstanceOf(ApiException.class)
                     .hasMessage("Could not get accounts data from Transaction Feed API")
                     .hasCauseInstanceOf(JsonProcessingException.class);
@@ -194,12 +184,113 @@ class ApiClientTest {
             stubFor(get("/api/v2/feed/account/accountUid/category/defaultCategory")
                     .willReturn(aResponse().withStatus(404)));
 
-            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(account, interval))
+            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountAndCategoryInInterval(account, "defaultCategory", interval))
                     .isInstanceOf(ApiException.class)
                     .hasMessageMatching("Status code 404 returned by http://.*/api/v2/feed/account/accountUid/category/defaultCategory.*");
         }
     }
 
+    @Nested
+    @DisplayName("getAllCategoriesForAccount")
+    class GetAllCategoriesForAccountTests {
+
+        private final Account account = new Account("accountUid", "defaultCategory");
+
+        @Test
+        @DisplayName("it should return the default category followed by the categories of all spending spaces")
+        void getsAllCategories() {
+            stubFor(
+                    get("/api/v2/account/accountUid/spaces")
+                            .withHeader("Authorization", equalTo("Bearer token"))
+                            .willReturn(aResponse().withStatus(200).withBodyFile("spaces.json"))
+            );
+
+            List<String> categories = apiClient.getAllCategoriesForAccount(account);
+
+            assertThat(categories).containsExactly("defaultCategory", "spendingSpaceOne", "spendingSpaceTwo");
+        }
+
+        @Test
+        @DisplayName("it should only return the default category when the account has no spending spaces")
+        void noSpendingSpaces() {
+            stubFor(get("/api/v2/account/accountUid/spaces").willReturn(aResponse().withStatus(200).withBody("{}")));
+
+            assertThat(apiClient.getAllCategoriesForAccount(account)).containsExactly("defaultCategory");
+        }
+
+        @Test
+        @DisplayName("it should throw an ApiException when the received JSON is invalid")
+        void invalidJson() {
+            stubFor(get("/api/v2/account/accountUid/spaces").willReturn(aResponse().withStatus(200).withBody("not json")));
+
+            assertThatThrownBy(() -> apiClient.getAllCategoriesForAccount(account))
+                    .isInstanceOf(ApiException.class)
+                    .hasMessage("Could not get spaces data from Spaces API")
+                    .hasCauseInstanceOf(JsonProcessingException.class);
+        }
+    }
+
+    @Nested
+    @DisplayName("getAllTransactionsForAccountInInterval")
+    class GetAllTransactionsForAccountTests {
+
+        private final Account account = new Account("accountUid", "defaultCategory");
+        private final Interval interval = Interval.lastWeek(Clock.fixed(Instant.parse("2020-01-21T10:15:30Z"), ZoneId.of("Z")));
+
+        @BeforeEach
+        void stubSpaces() {
+            stubFor(get("/api/v2/account/accountUid/spaces").willReturn(aResponse().withStatus(200).withBodyFile("spaces.json")));
+        }
+
+        @Test
+        @DisplayName("it should merge the feeds of all categories, keeping every feed item once")
+        void mergesAllCategories() {
+            stubFor(get(urlPathEqualTo("/api/v2/feed/account/accountUid/category/defaultCategory/transactions-between"))
+                    .willReturn(aResponse().withStatus(200).withBodyFile("transaction_feed.json")));
+            stubFor(get(urlPathEqualTo("/api/v2/feed/account/accountUid/category/spendingSpaceOne/transactions-between"))
+                    .willReturn(aResponse().withStatus(200).withBody(feedOf(
+                            feedItem("75d785cf-0095-41d0-bf12-b434f0425642", 2221),
+                            feedItem("spaceItem", 150)
+                    ))));
+            stubFor(get(urlPathEqualTo("/api/v2/feed/account/accountUid/category/spendingSpaceTwo/transactions-between"))
+                    .willReturn(aResponse().withStatus(200).withBody(feedOf())));
+
+            List<Transaction> transactions = apiClient.getAllTransactionsForAccountInInterval(account, interval);
+
+            assertThat(transactions)
+                    .extracting(Transaction::getFeedItemUid)
+                    .containsExactlyInAnyOrder(
+                            "75d7b8ca-36c2-4f76-9887-8996924606c2",
+                            "75d7dc80-2951-4b9b-bdf6-598a7e07954c",
+                            "75d785cf-0095-41d0-bf12-b434f0425642",
+                            "spaceItem"
+                    );
+        }
+
+        @Test
+        @DisplayName("it should throw an ApiException when the feed of any category cannot be retrieved")
+        void failingCategory() {
+            stubFor(get(urlPathMatching("/api/v2/feed/account/accountUid/category/.*/transactions-between"))
+                    .willReturn(aResponse().withStatus(200).withBody(feedOf())));
+            stubFor(get(urlPathEqualTo("/api/v2/feed/account/accountUid/category/spendingSpaceTwo/transactions-between"))
+                    .willReturn(aResponse().withStatus(500)));
+
+            assertThatThrownBy(() -> apiClient.getAllTransactionsForAccountInInterval(account, interval))
+                    .isInstanceOf(ApiException.class)
+                    .hasMessageMatching("Status code 500 returned by http://.*/category/spendingSpaceTwo/.*");
+        }
+
+        private String feedOf(String... feedItems) {
+            return "{\"feedItems\": [" + String.join(",", feedItems) + "]}";
+        }
+
+        private String feedItem(String feedItemUid, long minorUnits) {
+            return "{\"feedItemUid\": \"" + feedItemUid + "\", " +
+                    "\"amount\": {\"currency\": \"GBP\", \"minorUnits\": " + minorUnits + "}, " +
+                    "\"direction\": \"OUT\"}";
+        }
+    }
+
     @Nested
     @DisplayName("transferAmountToSavingsGoal")
     class TransferAmountToSavingsGoalTest {
@@ -218,8 +309,10 @@ class ApiClientTest {
                             .willReturn(aResponse().withStatus(200).withBodyFile("savings_goal.json"))
             );
 
-            apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, transferAmount);
+            TransferReceipt receipt = apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, transferAmount);
 
+            assertThat(receipt.getTransferUid()).isEqualTo("88998899-8899-8899-8899-889988998899");
+            assertThat(receipt.getStatusCode()).isEqualTo(200);
             verify(
                     putRequestedFor(urlPathMatching("^/api/v2/account/accountUid/savings-goals/savingsGoalUid/add-money/[0-9a-f]{8}-[0-9a-f]{4}-[0-5][0-9a-f]{3}-[089ab][0-9a-f]{3}-[0-9a-f]{12}"))
                             .withHeader("Authorization", equalTo("Bearer token"))
@@ -229,6 +322,20 @@ class ApiClientTest {
             );
         }
 
+        @Test
+        @DisplayName("it should treat a successful transfer whose response cannot be read as successful")
+        void unreadableTransferResponse() {
+            for (String body : List.of("{}", "not json", "")) {
+                stubFor(put(urlPathMatching("^/api/v2/account/accountUid/savings-goals/savingsGoalUid/add-money/.*"))
+                        .willReturn(aResponse().withStatus(200).withBody(body)));
+
+                TransferReceipt receipt = apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, transferAmount);
+
+                assertThat(receipt.getTransferUid()).isNull();
+                assertThat(receipt.getStatusCode()).isEqualTo(200);
+            }
+        }
+
         @Test
         @DisplayName("it should throw an ApiException when the HTTP status code is not successful")
         void nonSuccessfulStatusCode() {
@@ -237,17 +344,8 @@ class ApiClientTest {
 
             assertThatThrownBy(() -> apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, transferAmount))
                     .isInstanceOf(ApiException.class)
-                    .hasMessageMatching("Status code 404 returned by http://.*/api/v2/account/accountUid/savings-goals/savingsGoalUid/add-money/.*");
-        }
-
-        @Test
-        @DisplayName("it should throw an IllegalArgumentException if the baseUrl cannot be parsed")
-        void invalidBaseUrl() {
-            ApiClient apiClient = new ApiClient("foo", ACCESS_TOKEN);
-
-            assertThatThrownBy(() -> apiClient.transferIntoSavingsGoalForAccount(account, savingsGoalUid, transferAmount))
-                    .isInstanceOf(IllegalArgumentException.class)
-                    .hasMessage("URI with undefined scheme");
+                    .hasMessageMatching("Status code 404 returned by http://.*/api/v2/account/accountUid/savings-goals/savingsGoalUid/add-money/.*")
+                    .satisfies(e -> assertThat(((ApiException) e).getStatusCode()).hasValue(404));
         }
 
         @Test
@@ -262,4 +360,59 @@ class ApiClientTest {
                     .hasCauseInstanceOf(IOException.class);
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    @DisplayName("circuit breakers")
+    class CircuitBreakerTests {
+
+        private final Configuration configuration = Configuration.builder()
+                .baseUrl(wireMock.baseUrl())
+                .endpointPolicy(Endpoint.ACCOUNTS, EndpointPolicy.builder()
+                        .slidingWindowSize(2)
+                        .minimumCalls(2)
+                        .build())
+                .build();
+
+        private final ApiClient guardedApiClient = new ApiClient(configuration, ACCESS_TOKEN);
+
+        @Test
+        @DisplayName("it should fail fast without calling the endpoint once it keeps failing")
+        void failsFastWhenOpen() {
+            stubFor(get("/api/v2/accounts").willReturn(aResponse().withStatus(503)));
+
+            assertThatThrownBy(guardedApiClient::getAllAccounts).hasMessageStartingWith("Status code 503");
+            assertThatThrownBy(guardedApiClient::getAllAccounts).hasMessageStartingWith("Status code 503");
+            assertThatThrownBy(guardedApiClient::getAllAccounts)
+                    .isInstanceOf(CallNotPermittedException.class)
+                    .hasMessage("Circuit breaker for ACCOUNTS endpoint is open");
+
+            verify(2, getRequestedFor(urlEqualTo("/api/v2/accounts")));
+        }
+
+        @Test
+        @DisplayName("it should not count client errors as failures of the endpoint")
+        void ignoresClientErrors() {
+            stubFor(get("/api/v2/accounts").willReturn(aResponse().withStatus(404)));
+
+            for (int i = 0; i < 3; i++) {
+                assertThatThrownBy(guardedApiClient::getAllAccounts).hasMessageStartingWith("Status code 404");
+            }
+
+            verify(3, getRequestedFor(urlEqualTo("/api/v2/accounts")));
+        }
+
+        @Test
+        @DisplayName("it should keep other endpoints available when one endpoint's circuit is open")
+        void isolatesEndpoints() {
+            stubFor(get("/api/v2/accounts").willReturn(aResponse().withStatus(503)));
+            stubFor(get("/api/v2/account/accountUid/spaces").willReturn(aResponse().withStatus(200).withBody("{}")));
+
+            assertThatThrownBy(guardedApiClient::getAllAccounts).isInstanceOf(ApiException.class);
+            assertThatThrownBy(guardedApiClient::getAllAccounts).isInstanceOf(ApiException.class);
+            assertThatThrownBy(guardedApiClient::getAllAccounts).isInstanceOf(CallNotPermittedException.class);
+
+            assertThat(guardedApiClient.getAllCategoriesForAccount(new Account("accountUid", "defaultCategory")))
+                    .containsExactly("defaultCategory");
+        }
+    }
+}
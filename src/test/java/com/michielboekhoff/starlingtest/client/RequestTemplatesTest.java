@@ -0,0 +1,81 @@
+package com.michielboekhoff.starlingtest.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestTemplatesTest {
+
+    private static final Interval INTERVAL = Interval.lastWeek(Clock.fixed(Instant.parse("2020-01-21T10:15:30Z"), ZoneId.of("UTC")));
+
+    @Test
+    @DisplayName("it should build the same URIs as resolving the paths against the base URL")
+    void buildsUrisRelativeToOrigin() {
+        for (String baseUrl : List.of("http://localhost:8080", "http://localhost:8080/", "https://api-sandbox.starlingbank.com/some/path")) {
+            RequestTemplates requestTemplates = new RequestTemplates(Configuration.builder().baseUrl(baseUrl).build(), "token");
+            URI base = URI.create(baseUrl);
+
+            assertThat(requestTemplates.accounts().uri()).isEqualTo(base.resolve("/api/v2/accounts"));
+            assertThat(requestTemplates.spaces("accountUid").uri()).isEqualTo(base.resolve("/api/v2/account/accountUid/spaces"));
+            assertThat(requestTemplates.feed("accountUid", "categoryUid", INTERVAL).uri()).isEqualTo(base.resolve(
+                    "/api/v2/feed/account/accountUid/category/categoryUid/transactions-between" +
+                            "?minTransactionTimestamp=2020-01-14T10:15:30Z&maxTransactionTimestamp=2020-01-21T10:15:30Z"));
+        }
+    }
+
+    @Test
+    @DisplayName("it should build transfer requests with the authorization header and a JSON body")
+    void buildsTransferRequests() throws JsonProcessingException {
+        RequestTemplates requestTemplates = new RequestTemplates(Configuration.defaults(), "token");
+
+        HttpRequest request = requestTemplates.transfer("accountUid", "savingsGoalUid", "transferUid",
+                new SavingsGoalTransfer(new SavingsGoalTransfer.Amount("GBP", 158)));
+
+        assertThat(request.method()).isEqualTo("PUT");
+        assertThat(request.uri().getPath()).isEqualTo("/api/v2/account/accountUid/savings-goals/savingsGoalUid/add-money/transferUid");
+        assertThat(request.headers().firstValue("Authorization")).hasValue("Bearer token");
+        assertThat(request.headers().firstValue("Content-Type")).hasValue("application/json");
+        assertThat(body(request)).isEqualTo("{\"amount\":{\"currency\":\"GBP\",\"minorUnits\":158}}");
+    }
+
+    private static String body(HttpRequest request) {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        request.bodyPublisher().orElseThrow().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                buffers.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        StringBuilder body = new StringBuilder();
+        buffers.forEach(buffer -> body.append(StandardCharsets.UTF_8.decode(buffer)));
+        return body.toString();
+    }
+}
@@ -0,0 +1,160 @@
+package com.michielboekhoff.starlingtest.client.resilience;
+
+import com.michielboekhoff.starlingtest.client.resilience.CircuitBreaker.State;
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final Instant NOW = Instant.parse("2020-01-21T10:15:30Z");
+
+    private final EndpointPolicy policy = EndpointPolicy.builder()
+            .slidingWindowSize(4)
+            .minimumCalls(4)
+            .failureRateThreshold(0.5)
+            .openDuration(Duration.ofSeconds(30))
+            .halfOpenProbes(2)
+            .build();
+
+    @Test
+    @DisplayName("it should stay closed while the failure rate is below the threshold")
+    void staysClosedBelowThreshold() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(policy, clockAt(NOW));
+
+        call(circuitBreaker, true);
+        call(circuitBreaker, false);
+        call(circuitBreaker, false);
+        call(circuitBreaker, false);
+        call(circuitBreaker, true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    @DisplayName("it should not open before the minimum number of calls has been made")
+    void waitsForMinimumCalls() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(policy, clockAt(NOW));
+
+        call(circuitBreaker, true);
+        call(circuitBreaker, true);
+        call(circuitBreaker, true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("it should open once the failure rate reaches the threshold, and refuse calls while open")
+    void opensAtThreshold() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(policy, clockAt(NOW));
+
+        call(circuitBreaker, false);
+        call(circuitBreaker, false);
+        call(circuitBreaker, true);
+        call(circuitBreaker, true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+        assertThat(circuitBreaker.getOpenUntil()).isEqualTo(NOW.plusSeconds(30));
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    @DisplayName("it should let a limited number of probes through once the open duration has passed, and close when they succeed")
+    void closesAfterSuccessfulProbes() {
+        MutableClock clock = new MutableClock(NOW);
+        CircuitBreaker circuitBreaker = openCircuitBreaker(clock);
+
+        clock.instant = NOW.plusSeconds(30);
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+        assertThat(circuitBreaker.getState()).isEqualTo(State.HALF_OPEN);
+
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("it should open again when a probe fails")
+    void reopensAfterFailedProbe() {
+        MutableClock clock = new MutableClock(NOW);
+        CircuitBreaker circuitBreaker = openCircuitBreaker(clock);
+
+        clock.instant = NOW.plusSeconds(30);
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+        assertThat(circuitBreaker.getOpenUntil()).isEqualTo(NOW.plusSeconds(60));
+    }
+
+    @Test
+    @DisplayName("it should hand out a released probe permission again")
+    void releasesProbePermission() {
+        MutableClock clock = new MutableClock(NOW);
+        CircuitBreaker circuitBreaker = openCircuitBreaker(clock);
+
+        clock.instant = NOW.plusSeconds(30);
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        circuitBreaker.releasePermission();
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    }
+
+    private CircuitBreaker openCircuitBreaker(Clock clock) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(policy, clock);
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, true);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+        return circuitBreaker;
+    }
+
+    private void call(CircuitBreaker circuitBreaker, boolean fails) {
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        if (fails) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    private static Clock clockAt(Instant instant) {
+        return Clock.fixed(instant, ZoneId.of("Z"));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("Z");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
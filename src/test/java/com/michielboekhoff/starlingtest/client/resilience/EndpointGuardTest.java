@@ -0,0 +1,173 @@
+package com.michielboekhoff.starlingtest.client.resilience;
+
+import com.michielboekhoff.starlingtest.client.CallNotPermittedException;
+import com.michielboekhoff.starlingtest.client.Endpoint;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
+import com.michielboekhoff.starlingtest.config.ExecutionStrategy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EndpointGuardTest {
+
+    @Test
+    @DisplayName("it should never have more calls in flight than the in-flight limit, across endpoints")
+    @SuppressWarnings("unchecked")
+    void capsCallsInFlight() throws Exception {
+        InFlightLimit inFlightLimit = new InFlightLimit(2);
+        EndpointGuard feedGuard = new EndpointGuard(Endpoint.FEED, EndpointPolicy.defaults(), Clock.systemUTC(), inFlightLimit);
+        EndpointGuard transferGuard = new EndpointGuard(Endpoint.TRANSFER, EndpointPolicy.defaults(), Clock.systemUTC(), inFlightLimit);
+
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        EndpointGuard.HttpCall<String> call = () -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return response;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<HttpResponse<String>>> calls = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                EndpointGuard guard = i % 2 == 0 ? feedGuard : transferGuard;
+                calls.add(executor.submit(() -> guard.send(call)));
+            }
+            for (Future<HttpResponse<String>> future : calls) {
+                assertThat(future.get(10, TimeUnit.SECONDS)).isSameAs(response);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxInFlight.get()).isEqualTo(2);
+        assertThat(inFlightLimit.getInFlightRequests()).isZero();
+        assertThat(feedGuard.getBulkhead().getAvailablePermits()).isEqualTo(EndpointPolicy.defaults().getMaxConcurrentCalls());
+    }
+
+    @Test
+    @DisplayName("it should not let calls waiting for a saturated endpoint hold up calls to other endpoints")
+    @SuppressWarnings("unchecked")
+    void doesNotStarveOtherEndpoints() throws Exception {
+        InFlightLimit inFlightLimit = new InFlightLimit(4);
+        EndpointPolicy transferPolicy = EndpointPolicy.builder()
+                .maxConcurrentCalls(2)
+                .maxWaitForPermit(Duration.ofSeconds(10))
+                .build();
+        EndpointGuard feedGuard = new EndpointGuard(Endpoint.FEED, EndpointPolicy.defaults(), Clock.systemUTC(), inFlightLimit);
+        EndpointGuard transferGuard = new EndpointGuard(Endpoint.TRANSFER, transferPolicy, Clock.systemUTC(), inFlightLimit);
+
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        CountDownLatch transferEndpointRecovers = new CountDownLatch(1);
+        EndpointGuard.HttpCall<String> slowTransfer = () -> {
+            transferEndpointRecovers.await();
+            return response;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<HttpResponse<String>>> transfers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                transfers.add(executor.submit(() -> transferGuard.send(slowTransfer)));
+            }
+            while (transferGuard.getInFlightRequests() < 2) {
+                Thread.sleep(5);
+            }
+
+            Future<HttpResponse<String>> feed = executor.submit(() -> feedGuard.send(() -> response));
+            assertThat(feed.get(2, TimeUnit.SECONDS)).isSameAs(response);
+
+            transferEndpointRecovers.countDown();
+            for (Future<HttpResponse<String>> transfer : transfers) {
+                assertThat(transfer.get(10, TimeUnit.SECONDS)).isSameAs(response);
+            }
+        } finally {
+            transferEndpointRecovers.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("it should queue calls to a full endpoint rather than refuse them when accounts run on virtual threads")
+    @SuppressWarnings("unchecked")
+    void queuesCallsOnVirtualThreads() throws Exception {
+        Configuration configuration = Configuration.builder()
+                .executionStrategy(ExecutionStrategy.VIRTUAL_THREADS)
+                .maxInFlightRequests(4)
+                .endpointPolicy(Endpoint.FEED, EndpointPolicy.builder()
+                        .maxConcurrentCalls(2)
+                        .maxWaitForPermit(Duration.ofMillis(10))
+                        .build())
+                .build();
+        EndpointGuard guard = configuration.getEndpointGuard(Endpoint.FEED);
+
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        EndpointGuard.HttpCall<String> call = () -> {
+            Thread.sleep(20);
+            return response;
+        };
+
+        // Far more accounts than the bulkhead has permits, each waiting far longer than the wait of the policy.
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        try {
+            List<Future<HttpResponse<String>>> calls = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                calls.add(executor.submit(() -> guard.send(call)));
+            }
+            for (Future<HttpResponse<String>> future : calls) {
+                assertThat(future.get(10, TimeUnit.SECONDS)).isSameAs(response);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(guard.getRequestCount()).isEqualTo(50);
+        assertThat(guard.getRefusedRequestCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("it should count the calls made, refused and in flight")
+    @SuppressWarnings("unchecked")
+    void countsCalls() throws Exception {
+        EndpointPolicy policy = EndpointPolicy.builder().minimumCalls(1).slidingWindowSize(1).build();
+        EndpointGuard guard = new EndpointGuard(Endpoint.FEED, policy, Clock.systemUTC(), new InFlightLimit(2));
+
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(503);
+        AtomicLong inFlightDuringCall = new AtomicLong();
+        guard.send(() -> {
+            inFlightDuringCall.set(guard.getInFlightRequests());
+            return response;
+        });
+
+        assertThatThrownBy(() -> guard.send(() -> response)).isInstanceOf(CallNotPermittedException.class);
+
+        assertThat(inFlightDuringCall.get()).isEqualTo(1);
+        assertThat(guard.getInFlightRequests()).isZero();
+        assertThat(guard.getRequestCount()).isEqualTo(1);
+        assertThat(guard.getRefusedRequestCount()).isEqualTo(1);
+    }
+}
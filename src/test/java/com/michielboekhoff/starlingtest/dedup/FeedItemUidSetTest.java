@@ -0,0 +1,57 @@
+package com.michielboekhoff.starlingtest.dedup;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedItemUidSetTest {
+
+    @Test
+    @DisplayName("it should contain every added UID once, while growing")
+    void addsUids() {
+        FeedItemUidSet set = new FeedItemUidSet();
+        List<String> uids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            uids.add(UUID.randomUUID().toString());
+        }
+
+        uids.forEach(uid -> assertThat(set.add(uid)).isTrue());
+        uids.forEach(uid -> assertThat(set.add(uid)).isFalse());
+
+        assertThat(set.size()).isEqualTo(10_000);
+        assertThat(uids).allMatch(set::contains);
+        assertThat(set.contains(UUID.randomUUID().toString())).isFalse();
+    }
+
+    @Test
+    @DisplayName("it should store UUIDs as their 128 bits, regardless of case")
+    void storesUuidsExactly() {
+        UUID uuid = UUID.fromString("75d785cf-0095-41d0-bf12-b434f0425642");
+
+        assertThat(FeedItemUidSet.highBits(uuid.toString())).isEqualTo(uuid.getMostSignificantBits());
+        assertThat(FeedItemUidSet.lowBits(uuid.toString())).isEqualTo(uuid.getLeastSignificantBits());
+        assertThat(FeedItemUidSet.highBits(uuid.toString().toUpperCase())).isEqualTo(uuid.getMostSignificantBits());
+    }
+
+    @Test
+    @DisplayName("it should tell apart the nil UUID and UIDs that are not UUIDs")
+    void handlesOtherUids() {
+        FeedItemUidSet set = new FeedItemUidSet();
+
+        assertThat(set.add("00000000-0000-0000-0000-000000000000")).isTrue();
+        assertThat(set.add("feedItem1")).isTrue();
+        assertThat(set.add("feedItem2")).isTrue();
+        assertThat(set.add("75d785cf-0095-41d0-bf12-b434f042564x")).isTrue();
+
+        assertThat(set.contains("00000000-0000-0000-0000-000000000000")).isTrue();
+        assertThat(set.contains("feedItem1")).isTrue();
+        assertThat(set.contains("feedItem3")).isFalse();
+        assertThat(set.contains("75d785cf-0095-41d0-bf12-b434f0425642")).isFalse();
+        assertThat(set.size()).isEqualTo(4);
+    }
+}
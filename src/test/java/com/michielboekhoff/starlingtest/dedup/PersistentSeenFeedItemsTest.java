@@ -0,0 +1,89 @@
+package com.michielboekhoff.starlingtest.dedup;
+
+import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.domain.Account;
+import com.michielboekhoff.starlingtest.domain.Transaction;
+import com.michielboekhoff.starlingtest.domain.Transaction.TransactionDirection;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PersistentSeenFeedItemsTest {
+
+    private static final Account ACCOUNT = new Account("accountUid", "defaultCategory");
+
+    private static final Transaction FIRST = transaction("75d785cf-0095-41d0-bf12-b434f0425642");
+    private static final Transaction SECOND = transaction("75d7dc80-2951-4b9b-bdf6-598a7e07954c");
+    private static final Transaction THIRD = transaction("75d7b8ca-36c2-4f76-9887-8996924606c2");
+
+    private static final Interval LAST_WEEK = intervalEndingAt("2020-01-21T10:15:30Z");
+    private static final Interval OVERLAPPING = intervalEndingAt("2020-01-24T10:15:30Z");
+    private static final Interval AFTER_LAST_WEEK = intervalEndingAt("2020-01-29T10:15:30Z");
+
+    @Test
+    @DisplayName("it should leave out the feed items marked seen by an earlier run with an overlapping window")
+    void leavesOutSeenFeedItems(@TempDir Path directory) {
+        new PersistentSeenFeedItems(directory).markSeen(ACCOUNT, LAST_WEEK, List.of(FIRST, SECOND));
+
+        List<Transaction> unseen = new PersistentSeenFeedItems(directory)
+                .unseen(ACCOUNT, OVERLAPPING, List.of(FIRST, SECOND, THIRD));
+
+        assertThat(unseen).containsExactly(THIRD);
+        assertThat(new PersistentSeenFeedItems(directory).unseen(new Account("otherAccountUid", "defaultCategory"), OVERLAPPING, List.of(FIRST)))
+                .containsExactly(FIRST);
+    }
+
+    @Test
+    @DisplayName("it should drop the feed items that no later window can overlap")
+    void dropsExpiredFeedItems(@TempDir Path directory) throws IOException {
+        PersistentSeenFeedItems seenFeedItems = new PersistentSeenFeedItems(directory);
+        seenFeedItems.markSeen(ACCOUNT, LAST_WEEK, List.of(FIRST, SECOND));
+        seenFeedItems.markSeen(ACCOUNT, AFTER_LAST_WEEK, List.of(THIRD));
+
+        assertThat(seenFeedItems.unseen(ACCOUNT, AFTER_LAST_WEEK, List.of(FIRST, SECOND, THIRD)))
+                .containsExactly(FIRST, SECOND);
+        assertThat(Files.size(directory.resolve("accountUid.seen"))).isEqualTo(24);
+    }
+
+    @Test
+    @DisplayName("it should throw an UncheckedIOException when the seen feed items cannot be recorded")
+    void throwsWhenSeenFeedItemsCannotBeRecorded(@TempDir Path directory) throws IOException {
+        Path notADirectory = Files.createFile(directory.resolve("seen"));
+
+        assertThatThrownBy(() -> new PersistentSeenFeedItems(notADirectory).markSeen(ACCOUNT, LAST_WEEK, List.of(FIRST)))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessage("Could not record seen feed items for account accountUid");
+    }
+
+    @Test
+    @DisplayName("it should ignore a record left incomplete by a crash")
+    void ignoresIncompleteRecord(@TempDir Path directory) throws IOException {
+        PersistentSeenFeedItems seenFeedItems = new PersistentSeenFeedItems(directory);
+        seenFeedItems.markSeen(ACCOUNT, LAST_WEEK, List.of(FIRST));
+        Files.write(directory.resolve("accountUid.seen"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertThat(seenFeedItems.unseen(ACCOUNT, LAST_WEEK, List.of(FIRST, SECOND))).containsExactly(SECOND);
+    }
+
+    private static Transaction transaction(String feedItemUid) {
+        return new Transaction(feedItemUid, new BigDecimal("4.35"), TransactionDirection.OUT);
+    }
+
+    private static Interval intervalEndingAt(String end) {
+        return Interval.lastWeek(Clock.fixed(Instant.parse(end), ZoneId.of("UTC")));
+    }
+}
@@ -48,6 +48,7 @@ class TransactionDeserializerTest {
 
         Transaction transaction = objectMapper.readValue(json, Transaction.class);
 
+        assertThat(transaction.getFeedItemUid()).isEqualTo("75d7b8ca-36c2-4f76-9887-8996924606c2");
         assertThat(transaction.getAmount()).isEqualTo(new BigDecimal("600.00"));
         assertThat(transaction.getTransactionDirection()).isEqualTo(TransactionDirection.IN);
     }
@@ -152,4 +153,19 @@ class TransactionDeserializerTest {
                 .isInstanceOf(JsonProcessingException.class)
                 .hasMessageStartingWith("Cannot deserialize value of type `com.michielboekhoff.starlingtest.domain.Transaction$TransactionDirection` from String \"INVALID\": not one of the values accepted for Enum class: [IN, OUT]");
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldNotDeserializeWithoutFeedItemUid() {
+        String json = "{\n" +
+                "      \"amount\": {\n" +
+                "        \"currency\": \"GBP\",\n" +
+                "        \"minorUnits\": 60000\n" +
+                "      },\n" +
+                "      \"direction\": \"IN\"\n" +
+                "    }";
+
+        assertThatThrownBy(() -> objectMapper.readValue(json, Transaction.class))
+                .isInstanceOf(JsonProcessingException.class)
+                .hasMessageStartingWith("Cannot construct instance of `com.michielboekhoff.starlingtest.domain.Transaction`: A value has to be provided for $.feedItemUid");
+    }
+}
@@ -0,0 +1,83 @@
+package com.michielboekhoff.starlingtest.progress;
+
+import com.michielboekhoff.starlingtest.client.Endpoint;
+import com.michielboekhoff.starlingtest.client.resilience.EndpointGuard;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.config.EndpointPolicy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProgressReporterTest {
+
+    private static final Instant NOW = Instant.parse("2020-01-21T10:15:30Z");
+
+    @Test
+    @DisplayName("it should report the accounts, an estimate and the requests per endpoint")
+    @SuppressWarnings("unchecked")
+    void reportsProgress() throws Exception {
+        Configuration configuration = Configuration.builder()
+                .clock(Clock.fixed(NOW, ZoneId.of("UTC")))
+                .endpointPolicy(Endpoint.TRANSFER, EndpointPolicy.builder().minimumCalls(1).slidingWindowSize(1).build())
+                .build();
+        ProgressReporter reporter = new ProgressReporter(configuration, status -> {
+        }, 0);
+
+        RunProgress progress = configuration.getRunProgress();
+        progress.accountsFound(10);
+        for (int i = 0; i < 3; i++) {
+            progress.accountSucceeded();
+        }
+        progress.accountFailed();
+
+        HttpResponse<String> ok = mock(HttpResponse.class);
+        when(ok.statusCode()).thenReturn(200);
+        HttpResponse<String> unavailable = mock(HttpResponse.class);
+        when(unavailable.statusCode()).thenReturn(503);
+        EndpointGuard feedGuard = configuration.getEndpointGuard(Endpoint.FEED);
+        for (int i = 0; i < 40; i++) {
+            feedGuard.send(() -> ok);
+        }
+        configuration.getEndpointGuard(Endpoint.TRANSFER).send(() -> unavailable);
+
+        String status = reporter.status(TimeUnit.SECONDS.toNanos(20));
+
+        assertThat(status).contains(
+                "Accounts: 4 of 10 done, 1 failed, 6 remaining",
+                "Estimated time left: 0:00:30",
+                "In flight: 0 of 64 requests",
+                "FEED: 2.0 requests/s, 0 in flight, 0 refused, circuit closed",
+                "TRANSFER: ",
+                "circuit open, backing off for 30s"
+        );
+        assertThat(reporter.status(TimeUnit.SECONDS.toNanos(40)))
+                .contains("FEED: 0.0 requests/s, 0 in flight, 0 refused, circuit closed");
+    }
+
+    @Test
+    @DisplayName("it should write a last report to the status file when closed")
+    void writesLastReportWhenClosed(@TempDir Path directory) throws IOException {
+        Configuration configuration = Configuration.defaults();
+        configuration.getRunProgress().accountsFound(2);
+        Path statusFile = directory.resolve("status.txt");
+
+        ProgressReporter.toFile(configuration, statusFile, Duration.ofHours(1)).close();
+
+        assertThat(Files.readString(statusFile))
+                .contains("Accounts: 0 of 2 done, 0 failed, 2 remaining", "Estimated time left: unknown");
+    }
+}
@@ -0,0 +1,80 @@
+package com.michielboekhoff.starlingtest.runlog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michielboekhoff.starlingtest.client.ApiException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonLinesRunLogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("it should write one JSON object per recorded outcome once closed")
+    void writesOneLinePerOutcome(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("run.jsonl");
+
+        try (JsonLinesRunLog runLog = new JsonLinesRunLog(file, objectMapper)) {
+            for (int i = 0; i < 1000; i++) {
+                runLog.record(succeeded("account" + i));
+            }
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(1000);
+
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertThat(first.get("runId").asText()).isEqualTo("runId");
+        assertThat(first.get("recordedAt").asText()).isEqualTo("2020-01-21T10:15:30Z");
+        assertThat(first.get("accountUid").asText()).isEqualTo("account0");
+        assertThat(first.get("status").asText()).isEqualTo("SUCCEEDED");
+        assertThat(first.get("feedItemCount").asInt()).isEqualTo(3);
+        assertThat(first.get("roundUpMinorUnits").asLong()).isEqualTo(158L);
+        assertThat(first.get("transferUid").asText()).isEqualTo("transferUid");
+        assertThat(first.get("httpStatus").asInt()).isEqualTo(200);
+        assertThat(first.get("errorClass").isNull()).isTrue();
+        assertThat(first.get("warning").isNull()).isTrue();
+    }
+
+    @Test
+    @DisplayName("it should append to an existing run log, recording the error class of failed accounts")
+    void appendsToExistingFile(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("run.jsonl");
+        Files.writeString(file, "{}\n");
+
+        try (JsonLinesRunLog runLog = new JsonLinesRunLog(file, objectMapper)) {
+            runLog.record(AccountOutcome.builder("runId", "account")
+                    .recordedAt(Instant.parse("2020-01-21T10:15:30Z"))
+                    .httpStatus(503)
+                    .failed(new ApiException("Status code 503", 503)));
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(2);
+
+        JsonNode failed = objectMapper.readTree(lines.get(1));
+        assertThat(failed.get("status").asText()).isEqualTo("FAILED");
+        assertThat(failed.get("httpStatus").asInt()).isEqualTo(503);
+        assertThat(failed.get("errorClass").asText()).isEqualTo(ApiException.class.getName());
+    }
+
+    private AccountOutcome succeeded(String accountUid) {
+        return AccountOutcome.builder("runId", accountUid)
+                .recordedAt(Instant.parse("2020-01-21T10:15:30Z"))
+                .feedItemCount(3)
+                .roundUpMinorUnits(158)
+                .transferUid("transferUid")
+                .httpStatus(200)
+                .succeeded();
+    }
+}
@@ -1,15 +1,38 @@
 package com.michielboekhoff.starlingtest.service;
 
 import com.michielboekhoff.starlingtest.client.ApiClient;
+import com.michielboekhoff.starlingtest.client.ApiException;
+import com.michielboekhoff.starlingtest.client.Interval;
+import com.michielboekhoff.starlingtest.client.TransferReceipt;
+import com.michielboekhoff.starlingtest.config.Configuration;
+import com.michielboekhoff.starlingtest.config.ExecutionStrategy;
+import com.michielboekhoff.starlingtest.dedup.SeenFeedItems;
 import com.michielboekhoff.starlingtest.domain.Account;
 import com.michielboekhoff.starlingtest.domain.Transaction;
 import com.michielboekhoff.starlingtest.domain.Transaction.TransactionDirection;
+import com.michielboekhoff.starlingtest.runlog.AccountOutcome;
+import com.michielboekhoff.starlingtest.runlog.RunLog;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -25,17 +48,23 @@ class RoundupServiceTest {
     private final RoundupService roundupService = new RoundupService(apiClient);
 
     private final List<Transaction> transactions = List.of(
-            new Transaction(new BigDecimal("4.35"), TransactionDirection.OUT),
-            new Transaction(new BigDecimal("5.20"), TransactionDirection.OUT),
-            new Transaction(new BigDecimal("0.87"), TransactionDirection.OUT),
-            new Transaction(new BigDecimal("1.00"), TransactionDirection.OUT)
+            new Transaction("feedItem1", new BigDecimal("4.35"), TransactionDirection.OUT),
+            new Transaction("feedItem2", new BigDecimal("5.20"), TransactionDirection.OUT),
+            new Transaction("feedItem3", new BigDecimal("0.87"), TransactionDirection.OUT),
+            new Transaction("feedItem4", new BigDecimal("1.00"), TransactionDirection.OUT)
     );
 
+    @BeforeEach
+    void stubTransfers() {
+        when(apiClient.transferIntoSavingsGoalForAccount(any(), any(), any()))
+                .thenReturn(new TransferReceipt("transferUid", 200));
+    }
+
     @Test
     @DisplayName("it should round up all transactions into a savings goal for an account")
     void shouldRoundUpTransactionsForAnAccount() {
         when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT));
-        when(apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(eq(FIRST_ACCOUNT), any()))
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
                 .thenReturn(transactions);
 
         roundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
@@ -48,14 +77,320 @@ class RoundupServiceTest {
     @DisplayName("it should round up the transactions into a savings goal per account")
     void shouldRoundUpTransactionsPerAccount() {
         when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
-        when(apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(eq(FIRST_ACCOUNT), any()))
-                .thenReturn(List.of(new Transaction(new BigDecimal("1.58"), TransactionDirection.OUT)));
-        when(apiClient.getAllTransactionsForAccountAndDefaultCategoryInInterval(eq(SECOND_ACCOUNT), any()))
-                .thenReturn(List.of(new Transaction(new BigDecimal("0.84"), TransactionDirection.OUT)));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
+                .thenReturn(List.of(new Transaction("feedItem5", new BigDecimal("1.58"), TransactionDirection.OUT)));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(SECOND_ACCOUNT), any()))
+                .thenReturn(List.of(new Transaction("feedItem6", new BigDecimal("0.84"), TransactionDirection.OUT)));
 
         roundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
 
         verify(apiClient).transferIntoSavingsGoalForAccount(FIRST_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.42"));
         verify(apiClient).transferIntoSavingsGoalForAccount(SECOND_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.16"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("it should only round up the accounts matching the account filter")
+    void shouldOnlyRoundUpFilteredAccounts() {
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(SECOND_ACCOUNT), any()))
+                .thenReturn(transactions);
+
+        List<AccountOutcome> outcomes = roundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(
+                SAVINGS_GOAL_UID, account -> !account.equals(FIRST_ACCOUNT));
+
+        assertThat(outcomes).extracting(AccountOutcome::getAccountUid).containsExactly("accountTwo");
+        verify(apiClient, never()).getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any());
+        verify(apiClient, never()).transferIntoSavingsGoalForAccount(eq(FIRST_ACCOUNT), any(), any());
+    }
+
+    @Test
+    @DisplayName("it should round up the transactions per account when accounts are processed concurrently")
+    void shouldRoundUpTransactionsPerAccountConcurrently() {
+        Configuration configuration = Configuration.builder()
+                .executionStrategy(ExecutionStrategy.CONCURRENT)
+                .maxConcurrentAccounts(2)
+                .build();
+        RoundupService concurrentRoundupService = new RoundupService(apiClient, configuration);
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
+                .thenReturn(List.of(new Transaction("feedItem7", new BigDecimal("1.58"), TransactionDirection.OUT)));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(SECOND_ACCOUNT), any()))
+                .thenReturn(List.of(new Transaction("feedItem8", new BigDecimal("0.84"), TransactionDirection.OUT)));
+
+        concurrentRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        verify(apiClient).transferIntoSavingsGoalForAccount(FIRST_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.42"));
+        verify(apiClient).transferIntoSavingsGoalForAccount(SECOND_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.16"));
+    }
+
+    @Test
+    @DisplayName("it should round up the transactions per account on virtual threads, or on platform threads without them")
+    void shouldRoundUpTransactionsPerAccountOnVirtualThreads() {
+        Configuration configuration = Configuration.builder()
+                .executionStrategy(ExecutionStrategy.VIRTUAL_THREADS)
+                .build();
+        RoundupService virtualThreadRoundupService = new RoundupService(apiClient, configuration);
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
+                .thenReturn(List.of(new Transaction("feedItem9", new BigDecimal("1.58"), TransactionDirection.OUT)));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(SECOND_ACCOUNT), any()))
+                .thenReturn(List.of(new Transaction("feedItem10", new BigDecimal("0.84"), TransactionDirection.OUT)));
+
+        List<AccountOutcome> outcomes = virtualThreadRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        assertThat(outcomes).extracting(AccountOutcome::getAccountUid).containsExactly("accountOne", "accountTwo");
+        verify(apiClient).transferIntoSavingsGoalForAccount(FIRST_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.42"));
+        verify(apiClient).transferIntoSavingsGoalForAccount(SECOND_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.16"));
+    }
+
+    @Test
+    @DisplayName("it should move the last week window along with the configured clock on every run")
+    void shouldComputeTheIntervalPerRun() {
+        MutableClock clock = new MutableClock(Instant.parse("2020-01-21T10:15:30Z"));
+        RoundupService longLivedRoundupService = new RoundupService(apiClient, Configuration.builder().clock(clock).build());
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
+                .thenReturn(transactions);
+
+        longLivedRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+        clock.advance(Duration.ofDays(1));
+        longLivedRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        ArgumentCaptor<Interval> intervals = ArgumentCaptor.forClass(Interval.class);
+        verify(apiClient, times(2))
+                .getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), intervals.capture());
+        assertThat(intervals.getAllValues())
+                .extracting(interval -> interval.getEnd().toString())
+                .containsExactly("2020-01-21T10:15:30Z", "2020-01-22T10:15:30Z");
+    }
+
+    @Test
+    @DisplayName("it should carry on with the other accounts when one account fails, and record both outcomes")
+    void shouldRecordOutcomePerAccount() {
+        RunLog runLog = mock(RunLog.class);
+        RoundupService loggingRoundupService = new RoundupService(apiClient, Configuration.defaults(), runLog);
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
+                .thenThrow(new ApiException("Status code 503 returned by feed", 503));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(SECOND_ACCOUNT), any()))
+                .thenReturn(transactions);
+
+        List<AccountOutcome> outcomes = loggingRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        verify(apiClient).transferIntoSavingsGoalForAccount(SECOND_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("1.58"));
+        verify(runLog, times(2)).record(any());
+        assertThat(outcomes).hasSize(2);
+
+        AccountOutcome failed = outcomes.get(0);
+        assertThat(failed.getAccountUid()).isEqualTo("accountOne");
+        assertThat(failed.isSuccessful()).isFalse();
+        assertThat(failed.getHttpStatus()).isEqualTo(503);
+        assertThat(failed.getErrorClass()).isEqualTo(ApiException.class.getName());
+
+        AccountOutcome succeeded = outcomes.get(1);
+        assertThat(succeeded.getAccountUid()).isEqualTo("accountTwo");
+        assertThat(succeeded.isSuccessful()).isTrue();
+        assertThat(succeeded.getFeedItemCount()).isEqualTo(4);
+        assertThat(succeeded.getRoundUpMinorUnits()).isEqualTo(158L);
+        assertThat(succeeded.getTransferUid()).isEqualTo("transferUid");
+        assertThat(succeeded.getHttpStatus()).isEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("it should record any error of an account as its outcome and carry on with the other accounts")
+    void recordsUnexpectedErrorPerAccount() {
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any()))
+                .thenThrow(new NullPointerException("amount"));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(SECOND_ACCOUNT), any()))
+                .thenReturn(transactions);
+
+        List<AccountOutcome> outcomes = roundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        assertThat(outcomes)
+                .extracting(AccountOutcome::getAccountUid, AccountOutcome::isSuccessful, AccountOutcome::getErrorClass)
+                .containsExactly(
+                        tuple("accountOne", false, NullPointerException.class.getName()),
+                        tuple("accountTwo", true, null)
+                );
+    }
+
+    @Test
+    @DisplayName("it should never record a rounded up account as failed when the run log cannot record it")
+    void doesNotFailRoundedUpAccountWhenRunLogFails() {
+        RunLog runLog = mock(RunLog.class);
+        doThrow(new UncheckedIOException(new IOException("No space left on device"))).when(runLog).record(any());
+        RoundupService loggingRoundupService = new RoundupService(apiClient, Configuration.defaults(), runLog);
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any())).thenReturn(transactions);
+
+        assertThatThrownBy(() -> loggingRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID))
+                .isInstanceOf(UncheckedIOException.class);
+
+        verify(runLog).record(argThat(AccountOutcome::isSuccessful));
+        verifyNoMoreInteractions(runLog);
+    }
+
+    @Test
+    @DisplayName("it should leave out seen feed items and only mark them seen once transferred")
+    void shouldLeaveOutSeenFeedItems() {
+        SeenFeedItems seenFeedItems = mock(SeenFeedItems.class);
+        RoundupService dedupingRoundupService = new RoundupService(apiClient,
+                Configuration.builder().seenFeedItems(seenFeedItems).build());
+        List<Transaction> unseen = transactions.subList(2, 4);
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(any(), any())).thenReturn(transactions);
+        when(seenFeedItems.unseen(any(), any(), eq(transactions))).thenReturn(unseen);
+        when(apiClient.transferIntoSavingsGoalForAccount(eq(SECOND_ACCOUNT), any(), any()))
+                .thenThrow(new ApiException("Status code 503 returned by transfer", 503));
+
+        dedupingRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        verify(apiClient).transferIntoSavingsGoalForAccount(FIRST_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.13"));
+        verify(seenFeedItems).markSeen(eq(FIRST_ACCOUNT), any(), eq(unseen));
+        verify(seenFeedItems, never()).markSeen(eq(SECOND_ACCOUNT), any(), any());
+    }
+
+    @Test
+    @DisplayName("it should record a warning rather than a failure when the rounded up feed items cannot be marked seen")
+    void warnsWhenFeedItemsCannotBeMarkedSeen() {
+        SeenFeedItems seenFeedItems = mock(SeenFeedItems.class);
+        RoundupService dedupingRoundupService = new RoundupService(apiClient,
+                Configuration.builder().seenFeedItems(seenFeedItems).build());
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT));
+        when(apiClient.getAllTransactionsForAccountInInterval(eq(FIRST_ACCOUNT), any())).thenReturn(transactions);
+        when(seenFeedItems.unseen(any(), any(), eq(transactions))).thenReturn(transactions);
+        doThrow(new UncheckedIOException("Could not record seen feed items for account accountOne",
+                new IOException("No space left on device")))
+                .when(seenFeedItems).markSeen(any(), any(), any());
+
+        List<AccountOutcome> outcomes = dedupingRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        assertThat(outcomes)
+                .extracting(AccountOutcome::isSuccessful, AccountOutcome::getWarning)
+                .containsExactly(tuple(true, "Feed items not marked seen: Could not record seen feed items for account accountOne"));
+    }
+
+    @Test
+    @DisplayName("it should round up the transactions per account when accounts are processed in a pipeline")
+    void shouldRoundUpTransactionsPerAccountInPipeline() {
+        Configuration configuration = Configuration.builder()
+                .executionStrategy(ExecutionStrategy.PIPELINED)
+                .maxConcurrentAccounts(2)
+                .parserThreads(1)
+                .pipelineQueueCapacity(1)
+                .build();
+        RoundupService pipelinedRoundupService = new RoundupService(apiClient, configuration);
+
+        when(apiClient.getAllAccounts()).thenReturn(List.of(FIRST_ACCOUNT, SECOND_ACCOUNT));
+        when(apiClient.getAllRawFeedsForAccountInInterval(eq(FIRST_ACCOUNT), any())).thenReturn(List.of("firstFeed"));
+        when(apiClient.getAllRawFeedsForAccountInInterval(eq(SECOND_ACCOUNT), any())).thenReturn(List.of("secondFeed"));
+        when(apiClient.parseFeeds(List.of("firstFeed")))
+                .thenReturn(List.of(new Transaction("feedItem9", new BigDecimal("1.58"), TransactionDirection.OUT)));
+        when(apiClient.parseFeeds(List.of("secondFeed")))
+                .thenThrow(new ApiException("Could not get accounts data from Transaction Feed API"));
+
+        List<AccountOutcome> outcomes = pipelinedRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        verify(apiClient).transferIntoSavingsGoalForAccount(FIRST_ACCOUNT, SAVINGS_GOAL_UID, new BigDecimal("0.42"));
+        verify(apiClient, never()).transferIntoSavingsGoalForAccount(eq(SECOND_ACCOUNT), any(), any());
+        assertThat(outcomes)
+                .extracting(AccountOutcome::getAccountUid, AccountOutcome::isSuccessful)
+                .containsExactlyInAnyOrder(tuple("accountOne", true), tuple("accountTwo", false));
+    }
+
+    @Test
+    @DisplayName("it should hold back fetching while the transfer stage of the pipeline is slow")
+    void holdsBackFetchingWhileTransfersAreSlow() {
+        Configuration configuration = Configuration.builder()
+                .executionStrategy(ExecutionStrategy.PIPELINED)
+                .maxConcurrentAccounts(1)
+                .parserThreads(1)
+                .pipelineQueueCapacity(1)
+                .build();
+        RoundupService pipelinedRoundupService = new RoundupService(apiClient, configuration);
+        List<Account> accounts = IntStream.range(0, 20)
+                .mapToObj(i -> new Account("account" + i, "defaultCategory"))
+                .collect(Collectors.toList());
+        AtomicInteger fetchedNotTransferred = new AtomicInteger();
+        AtomicInteger mostFetchedNotTransferred = new AtomicInteger();
+
+        when(apiClient.getAllAccounts()).thenReturn(accounts);
+        when(apiClient.getAllRawFeedsForAccountInInterval(any(), any())).thenAnswer(invocation -> {
+            mostFetchedNotTransferred.accumulateAndGet(fetchedNotTransferred.incrementAndGet(), Math::max);
+            return List.of("feed");
+        });
+        when(apiClient.parseFeeds(any())).thenReturn(transactions);
+        when(apiClient.transferIntoSavingsGoalForAccount(any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            fetchedNotTransferred.decrementAndGet();
+            return new TransferReceipt("transferUid", 200);
+        });
+
+        List<AccountOutcome> outcomes = pipelinedRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID);
+
+        assertThat(outcomes).hasSize(20).allMatch(AccountOutcome::isSuccessful);
+        // One account per thread, and one per queue between the stages.
+        assertThat(mostFetchedNotTransferred.get()).isLessThanOrEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("it should stop the pipeline and throw when a stage fails, rather than leave the other stages waiting")
+    void stopsPipelineWhenAStageFails() {
+        RunLog runLog = mock(RunLog.class);
+        doThrow(new UncheckedIOException(new IOException("No space left on device"))).when(runLog).record(any());
+        Configuration configuration = Configuration.builder()
+                .executionStrategy(ExecutionStrategy.PIPELINED)
+                .maxConcurrentAccounts(1)
+                .parserThreads(1)
+                .pipelineQueueCapacity(1)
+                .build();
+        RoundupService pipelinedRoundupService = new RoundupService(apiClient, configuration, runLog);
+        List<Account> accounts = IntStream.range(0, 20)
+                .mapToObj(i -> new Account("account" + i, "defaultCategory"))
+                .collect(Collectors.toList());
+
+        when(apiClient.getAllAccounts()).thenReturn(accounts);
+        when(apiClient.getAllRawFeedsForAccountInInterval(any(), any())).thenReturn(List.of("feed"));
+        when(apiClient.parseFeeds(any())).thenReturn(transactions);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                assertThatThrownBy(() -> pipelinedRoundupService.roundUpTransactionsFromLastWeekIntoSavingsGoal(SAVINGS_GOAL_UID))
+                        .isInstanceOf(UncheckedIOException.class));
+        verify(apiClient, atMost(5)).getAllRawFeedsForAccountInInterval(any(), any());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("Z");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}